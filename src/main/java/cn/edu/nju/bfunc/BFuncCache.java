@@ -0,0 +1,208 @@
+package cn.edu.nju.bfunc;
+
+import cn.edu.nju.context.Context;
+import cn.edu.nju.context.ContextStore;
+import cn.edu.nju.node.NodeType;
+import cn.edu.nju.util.BFuncHelper;
+import cn.edu.nju.util.LinkHelper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 所有checker共享的bfunction结果缓存（线程安全，不加锁）。
+ * 以开放寻址的long数组保存，键为两个context id打包成的long；值的高32位为键的指纹，
+ * 其后16位标记已缓存的bfunction，低16位为对应结果，每个bfunction占一位：内置bfunction为opcode - NodeType.SAME，自定义bfunction依次在其后。
+ * 写入时先写值再写键，读到的值与键的指纹不一致时视为未命中。
+ * context id按读入顺序递增，各pattern窗口的队首为其中最早的context：id小于所有非空窗口队首id的context已离开全部窗口，
+ * 较小id低于该界限的项视为已失效（查询不命中，写入时当作空槽）；探测范围内没有空槽时替换较小id最小（最早过期）的项
+ */
+public class BFuncCache {
+    private static final int CUSTOM_BIT = NodeType.SZ_LOC_RANGE - NodeType.SAME + 1;
+
+    private static final int FUNC_BITS = 16;
+
+    private static final int PROBES = 4; //每个键最多探测的槽数
+
+    private static final long EMPTY = LinkHelper.EMPTY_LINK; //context id非负，不会与真实的键冲突
+
+    private static AtomicLongArray keys;
+
+    private static AtomicLongArray values;
+
+    private static int mask;
+
+    /* 各非空pattern窗口队首context的id */
+    private static final Map<String, Integer> heads = new HashMap<>();
+
+    private static volatile int liveFrom = 0; //id小于此值的context已离开全部pattern窗口
+
+    private static final LongAdder hits = new LongAdder();
+
+    private static final LongAdder misses = new LongAdder();
+
+    private static int capacity = 0;
+
+    /**
+     * 设置缓存容量（context对数，向上取为2的幂），0表示不使用缓存
+     * @param capacity
+     */
+    public static void setCapacity(int capacity) {
+        BFuncCache.capacity = capacity;
+        if (capacity <= 0) {
+            keys = null;
+            values = null;
+            return;
+        }
+        int n = PROBES;
+        while (n < capacity) {
+            n <<= 1;
+        }
+        keys = new AtomicLongArray(n);
+        values = new AtomicLongArray(n);
+        mask = n - 1;
+        for (int i = 0; i < n; i++) {
+            keys.set(i, EMPTY);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    private static int bitOf(int func) {
+        if (func >= NodeType.SAME && func <= NodeType.SZ_LOC_RANGE) {
+            return func - NodeType.SAME;
+        }
+        int bit = CUSTOM_BIT + func - BFuncRegistry.CUSTOM_OPCODE;
+        return func >= BFuncRegistry.CUSTOM_OPCODE && bit < FUNC_BITS ? bit : -1;
+    }
+
+    /**
+     * 键中较小的context id，小于liveFrom时该项已失效
+     * @param key
+     * @return
+     */
+    private static int minId(long key) {
+        return Math.min(LinkHelper.getId(key, 0), LinkHelper.getId(key, 1));
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * 查询缓存，未命中时计算并加入缓存
+     * @param func
+     * @param context1
+     * @param context2
+     * @return
+     */
+    public static boolean bfun(int func, Context context1, Context context2) {
+        if (context2 == null) {
+            return BFuncHelper.compute(func, context1, null);
+        }
+        return bfun(func, context1.getRow(), context2.getRow());
+    }
+
+    /**
+     * 按ContextStore中的行号查询缓存，未命中时计算并加入缓存
+     * @param func
+     * @param row1
+     * @param row2
+     * @return
+     */
+    public static boolean bfun(int func, int row1, int row2) {
+        int bit = bitOf(func);
+        if (bit == -1) {
+            return BFuncHelper.compute(func, row1, row2);
+        }
+
+        long key = LinkHelper.pack(ContextStore.getId(row1), ContextStore.getId(row2));
+        long h = mix(key);
+        long fingerprint = h >>> 32;
+        int home = (int) h & mask;
+        int slot = -1;
+        long entry = 0L;
+        int live = liveFrom;
+        boolean expired = minId(key) < live; //其中的context已离开全部pattern窗口
+        for (int p = 0; p < PROBES && !expired; p++) {
+            int i = (home + p) & mask;
+            if (keys.get(i) == key) {
+                long v = values.get(i);
+                if (v >>> 32 == fingerprint) {
+                    slot = i;
+                    entry = v;
+                }
+                break;
+            }
+        }
+        if (slot != -1 && (entry & (1L << (FUNC_BITS + bit))) != 0) {
+            hits.increment();
+            return (entry & (1L << bit)) != 0;
+        }
+
+        misses.increment();
+        boolean value = BFuncHelper.compute(func, row1, row2);
+        long bits = (1L << (FUNC_BITS + bit)) | (value ? 1L << bit : 0L);
+        if (slot != -1) { //同一context对的其他bfunction已缓存
+            values.set(slot, entry | bits);
+            return value;
+        }
+        if (expired) {
+            return value; //不再缓存
+        }
+
+        //选择空槽或已失效的项，没有时替换最早过期的项
+        int victim = home;
+        int oldest = Integer.MAX_VALUE;
+        for (int p = 0; p < PROBES; p++) {
+            int i = (home + p) & mask;
+            long k = keys.get(i);
+            if (k == EMPTY || minId(k) < live) {
+                victim = i;
+                break;
+            }
+            if (minId(k) < oldest) {
+                oldest = minId(k);
+                victim = i;
+            }
+        }
+        values.set(victim, (fingerprint << 32) | bits);
+        keys.set(victim, key);
+        return value;
+    }
+
+    /**
+     * pattern窗口的队首变化时调用（有context过期，或空窗口加入第一个context），更新失效界限
+     * @param patternId
+     * @param headId 窗口队首context的id，窗口为空时为-1
+     */
+    public static synchronized void expire(String patternId, int headId) {
+        if (headId == -1) {
+            heads.remove(patternId);
+        }
+        else {
+            heads.put(patternId, headId);
+        }
+        if (heads.isEmpty()) {
+            return; //没有context在窗口中，界限保持不变
+        }
+        int min = Integer.MAX_VALUE;
+        for (int id : heads.values()) {
+            min = Math.min(min, id);
+        }
+        liveFrom = min;
+    }
+
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    public static long getMisses() {
+        return misses.sum();
+    }
+}
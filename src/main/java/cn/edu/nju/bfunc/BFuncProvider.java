@@ -0,0 +1,11 @@
+package cn.edu.nju.bfunc;
+
+import java.util.List;
+
+/**
+ * bfunction提供者，通过ServiceLoader加载：
+ * 在META-INF/services/cn.edu.nju.bfunc.BFuncProvider中列出实现类
+ */
+public interface BFuncProvider {
+    List<BFunction> getBFunctions();
+}
@@ -0,0 +1,60 @@
+package cn.edu.nju.bfunc;
+
+import cn.edu.nju.node.NodeType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * 通过ServiceLoader加载所有BFuncProvider，为每个bfunction分配操作码：
+ * 内置bfunction使用NodeType中的操作码（与GAIN kernel一致），其余从CUSTOM_OPCODE开始依次分配
+ */
+public class BFuncRegistry {
+    public static final int CUSTOM_OPCODE = 100;
+
+    private static final Map<String, Integer> opcodeMap = new HashMap<>();
+
+    private static final Map<Integer, BFunction> bfuncMap = new HashMap<>();
+
+    static {
+        int nextOpcode = CUSTOM_OPCODE;
+        for (BFuncProvider provider : ServiceLoader.load(BFuncProvider.class)) {
+            for (BFunction bfunc : provider.getBFunctions()) {
+                int opcode = bfunc.getOpcode();
+                if (opcode == -1) {
+                    opcode = nextOpcode++;
+                }
+                if (opcodeMap.containsKey(bfunc.getName()) || bfuncMap.containsKey(opcode)) {
+                    System.out.println("[INFO] bfunction重复定义：" + bfunc.getName());
+                    System.exit(1);
+                }
+                opcodeMap.put(bfunc.getName(), opcode);
+                bfuncMap.put(opcode, bfunc);
+            }
+        }
+    }
+
+    /**
+     * 根据rules.xml中的名字查找操作码
+     * @param name
+     * @return 操作码，未定义的bfunction返回-1
+     */
+    public static int resolve(String name) {
+        Integer opcode = opcodeMap.get(name);
+        return opcode != null ? opcode : -1;
+    }
+
+    public static BFunction get(int opcode) {
+        return bfuncMap.get(opcode);
+    }
+
+    /**
+     * 是否可以在GAIN kernel中计算
+     * @param opcode
+     * @return
+     */
+    public static boolean isGPUSupported(int opcode) {
+        return opcode >= NodeType.SAME && opcode <= NodeType.SZ_LOC_RANGE;
+    }
+}
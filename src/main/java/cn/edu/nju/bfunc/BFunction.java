@@ -0,0 +1,61 @@
+package cn.edu.nju.bfunc;
+
+import cn.edu.nju.context.Context;
+import cn.edu.nju.pattern.ContextColumns;
+
+import java.util.List;
+
+/**
+ * rule中引用的bfunction，由BFuncProvider提供，按名字在rules.xml中使用
+ */
+public interface BFunction {
+    /**
+     * rules.xml中bfunction的name属性
+     * @return
+     */
+    String getName();
+
+    /**
+     * GAIN kernel中对应的操作码（NodeType.SAME等），GPU不支持时返回-1
+     * @return
+     */
+    default int getOpcode() {
+        return -1;
+    }
+
+    /**
+     * 距离类bfunction（两个context的距离不超过阈值时才可能为真）的距离阈值，用于网格索引，其余返回-1
+     * @return
+     */
+    default double getDistanceThreshold() {
+        return -1;
+    }
+
+    boolean evaluate(Context context1, Context context2);
+
+    /**
+     * 批量计算：result[i] = evaluate(contexts.get(i), context)，context为null时第二个参数也取contexts.get(i)
+     * @param contexts
+     * @param context
+     * @param result
+     */
+    default void evaluate(List<Context> contexts, Context context, boolean [] result) {
+        for (int i = 0; i < contexts.size(); i++) {
+            Context c = contexts.get(i);
+            result[i] = evaluate(c, context != null ? context : c);
+        }
+    }
+
+    /**
+     * 列式批量计算：mask的第k位 = evaluate(columns.get(start + k), context)，mask需预先清零
+     * @param columns pattern快照的列式视图
+     * @param start
+     * @param num
+     * @param context 外层量词的context，不为null
+     * @param mask
+     * @return 是否支持列式计算，不支持时mask不变
+     */
+    default boolean evaluate(ContextColumns columns, int start, int num, Context context, long [] mask) {
+        return false;
+    }
+}
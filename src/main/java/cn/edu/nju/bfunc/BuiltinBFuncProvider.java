@@ -0,0 +1,14 @@
+package cn.edu.nju.bfunc;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 内置的出租车bfunction
+ */
+public class BuiltinBFuncProvider implements BFuncProvider {
+    @Override
+    public List<BFunction> getBFunctions() {
+        return Arrays.asList(BuiltinBFunction.values());
+    }
+}
@@ -0,0 +1,157 @@
+package cn.edu.nju.bfunc;
+
+import cn.edu.nju.context.Context;
+import cn.edu.nju.node.NodeType;
+import cn.edu.nju.pattern.ContextColumns;
+import cn.edu.nju.util.BFuncHelper;
+import cn.edu.nju.util.LocationHelper;
+
+import java.util.List;
+
+/**
+ * 内置bfunction，标量计算与BFuncHelper一致，批量计算时只读取一次另一个context的属性，
+ * 距离类和sz_spd_close另支持按列计算（见ColumnKernels）
+ */
+public enum BuiltinBFunction implements BFunction {
+    SZ_LOC_RANGE("sz_loc_range", NodeType.SZ_LOC_RANGE, -1) {
+        @Override
+        public boolean evaluate(Context context1, Context context2) {
+            return BFuncHelper.szLocRange(context1);
+        }
+
+        @Override
+        public void evaluate(List<Context> contexts, Context context, boolean [] result) {
+            for (int i = 0; i < contexts.size(); i++) {
+                result[i] = BFuncHelper.szLocRange(contexts.get(i));
+            }
+        }
+    },
+    SAME("same", NodeType.SAME, -1) {
+        @Override
+        public boolean evaluate(Context context1, Context context2) {
+            return BFuncHelper.same(context1, context2);
+        }
+    },
+    SZ_LOC_CLOSE("sz_loc_close", NodeType.SZ_LOC_CLOSE, 0.001) {
+        @Override
+        public boolean evaluate(Context context1, Context context2) {
+            return BFuncHelper.szLocClose(context1, context2);
+        }
+
+        @Override
+        public void evaluate(List<Context> contexts, Context context, boolean [] result) {
+            distances(contexts, context, result, getDistanceThreshold(), false);
+        }
+
+        @Override
+        public boolean evaluate(ContextColumns columns, int start, int num, Context context, long [] mask) {
+            ColumnKernels.distance(columns, start, num, context, getDistanceThreshold(), false, mask);
+            return true;
+        }
+    },
+    SZ_SPD_CLOSE("sz_spd_close", NodeType.SZ_SPD_CLOSE, -1) {
+        @Override
+        public boolean evaluate(Context context1, Context context2) {
+            return BFuncHelper.szSpdClose(context1, context2);
+        }
+
+        @Override
+        public void evaluate(List<Context> contexts, Context context, boolean [] result) {
+            if (context == null) {
+                super.evaluate(contexts, null, result);
+                return;
+            }
+            double speed2 = context.getSpeed();
+            for (int i = 0; i < contexts.size(); i++) {
+                double diff = contexts.get(i).getSpeed() - speed2;
+                result[i] = Double.compare(diff, -50.0) >= 0 && Double.compare(diff, 50.0) <= 0;
+            }
+        }
+
+        @Override
+        public boolean evaluate(ContextColumns columns, int start, int num, Context context, long [] mask) {
+            ColumnKernels.speed(columns, start, num, context, 50.0, mask);
+            return true;
+        }
+    },
+    SZ_LOC_DIST("sz_loc_dist", NodeType.SZ_LOC_DIST, 0.025) {
+        @Override
+        public boolean evaluate(Context context1, Context context2) {
+            return BFuncHelper.szLocDist(context1, context2);
+        }
+
+        @Override
+        public void evaluate(List<Context> contexts, Context context, boolean [] result) {
+            distances(contexts, context, result, getDistanceThreshold(), false);
+        }
+
+        @Override
+        public boolean evaluate(ContextColumns columns, int start, int num, Context context, long [] mask) {
+            ColumnKernels.distance(columns, start, num, context, getDistanceThreshold(), false, mask);
+            return true;
+        }
+    },
+    SZ_LOC_DIST_NEQ("sz_loc_dist_neq", NodeType.SZ_LOC_DIST_NEQ, 0.025) {
+        @Override
+        public boolean evaluate(Context context1, Context context2) {
+            return BFuncHelper.szLocDistNeq(context1, context2);
+        }
+
+        @Override
+        public void evaluate(List<Context> contexts, Context context, boolean [] result) {
+            distances(contexts, context, result, getDistanceThreshold(), true);
+        }
+
+        @Override
+        public boolean evaluate(ContextColumns columns, int start, int num, Context context, long [] mask) {
+            ColumnKernels.distance(columns, start, num, context, getDistanceThreshold(), true, mask);
+            return true;
+        }
+    };
+
+    private final String name;
+
+    private final int opcode;
+
+    private final double threshold;
+
+    BuiltinBFunction(String name, int opcode, double threshold) {
+        this.name = name;
+        this.opcode = opcode;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getOpcode() {
+        return opcode;
+    }
+
+    @Override
+    public double getDistanceThreshold() {
+        return threshold;
+    }
+
+    /**
+     * 距离类bfunction的批量计算：距离不超过threshold（neq时还要求不为0）
+     */
+    private static void distances(List<Context> contexts, Context context, boolean [] result, double threshold, boolean neq) {
+        if (context == null) { //与自身比较，距离恒为0
+            for (int i = 0; i < contexts.size(); i++) {
+                result[i] = !neq;
+            }
+            return;
+        }
+        double longitude2 = context.getLongitude();
+        double latitude2 = context.getLatitude();
+        for (int i = 0; i < contexts.size(); i++) {
+            Context c = contexts.get(i);
+            double d = LocationHelper.getDistance(c.getLongitude(), c.getLatitude(), longitude2, latitude2);
+            result[i] = Double.compare(d, threshold) <= 0 && (!neq || Double.compare(d, 0.0) != 0);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package cn.edu.nju.bfunc;
+
+import cn.edu.nju.context.Context;
+import cn.edu.nju.pattern.ContextColumns;
+
+/**
+ * 内置bfunction的列式计算：对pattern快照中连续的一段context逐列计算，结果按位写入mask。
+ * 内层循环只访问double数组且没有分支，便于JIT展开和向量化；计算方式与BFuncHelper逐位一致
+ */
+final class ColumnKernels {
+    private ColumnKernels() {
+    }
+
+    /**
+     * 距离不超过threshold（neq时还要求不为0），与LocationHelper.getDistance一致先开方再比较
+     */
+    static void distance(ContextColumns columns, int start, int num, Context context, double threshold, boolean neq, long [] mask) {
+        double [] longitudes = columns.getLongitudes();
+        double [] latitudes = columns.getLatitudes();
+        double longitude = context.getLongitude();
+        double latitude = context.getLatitude();
+        int k = 0;
+        while (k < num) { //环形缓冲区至多分为两段
+            int p = columns.physical(start + k) - k;
+            int end = k + columns.run(start + k, num - k);
+            for (; k < end; k++) {
+                double dx = longitudes[p + k] - longitude;
+                double dy = latitudes[p + k] - latitude;
+                double d = Math.sqrt(dx * dx + dy * dy);
+                boolean b = d <= threshold && (!neq || d != 0.0);
+                mask[k >>> 6] |= (b ? 1L : 0L) << k;
+            }
+        }
+    }
+
+    /**
+     * 速度差在[-bound, bound]内
+     */
+    static void speed(ContextColumns columns, int start, int num, Context context, double bound, long [] mask) {
+        double [] speeds = columns.getSpeeds();
+        double speed = context.getSpeed();
+        int k = 0;
+        while (k < num) {
+            int p = columns.physical(start + k) - k;
+            int end = k + columns.run(start + k, num - k);
+            for (; k < end; k++) {
+                double diff = speeds[p + k] - speed;
+                boolean b = diff >= -bound && diff <= bound;
+                mask[k >>> 6] |= (b ? 1L : 0L) << k;
+            }
+        }
+    }
+}
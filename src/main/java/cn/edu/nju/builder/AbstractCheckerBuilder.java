@@ -1,9 +1,14 @@
 package cn.edu.nju.builder;
 
+import cn.edu.nju.bfunc.BFuncCache;
+import cn.edu.nju.bfunc.BFuncRegistry;
 import cn.edu.nju.change.*;
 import cn.edu.nju.checker.*;
+import cn.edu.nju.context.ContextStore;
+import cn.edu.nju.memory.Config;
 import cn.edu.nju.memory.GPUContextMemory;
 import cn.edu.nju.memory.GPUResult;
+import cn.edu.nju.node.CUnitLayout;
 import cn.edu.nju.node.STNode;
 import cn.edu.nju.pattern.Pattern;
 import cn.edu.nju.scheduler.BatchScheduler;
@@ -11,6 +16,7 @@ import cn.edu.nju.scheduler.GEASOptScheduler;
 import cn.edu.nju.scheduler.GEAScheduler;
 import cn.edu.nju.scheduler.Scheduler;
 import cn.edu.nju.util.Accuracy;
+import cn.edu.nju.util.BFuncHelper;
 import cn.edu.nju.util.LogFileHelper;
 import cn.edu.nju.util.PTXFileHelper;
 import jcuda.driver.CUcontext;
@@ -31,6 +37,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import static jcuda.driver.JCudaDriver.*;
 
 public abstract class AbstractCheckerBuilder implements CheckerType{
@@ -46,6 +53,34 @@ public abstract class AbstractCheckerBuilder implements CheckerType{
 
     public static String changeFilePath; //context change
 
+    public static boolean arenaCCT = false; //CCT以数组形式存储
+
+    public static boolean streamEval = false; //不构建CCT，按语法树嵌套遍历pattern求值
+
+    public static int linkLimit = -1; //每次检测展开的最大link数，-1表示不限制
+
+    public static final int LINK_FIRST = 0;
+
+    public static final int LINK_NEWEST = 1;
+
+    public static final int LINK_DISTINCT = 2;
+
+    public static int linkPolicy = LINK_FIRST; //超出linkLimit时选取输出link的策略
+
+    public static long cctBudget = -1; //PCC常驻的CCT结点数上限，超出时按LRU换出量词子树，-1表示不限制
+
+    public static boolean twoPhaseEval = false; //先求值，根结点为假时再生成link
+
+    public static boolean violationLinks = false; //结点只保存可能出现在根结点violated link中的link
+
+    public static boolean countingEval = false; //量词结点维护计数，增量求值只重算变化的子结点
+
+    public static boolean gridIndex = false; //距离类bfunction借助pattern的网格索引只计算相邻的context
+
+    public static boolean plateIndex = false; //same借助pattern的车牌号索引只计算同一辆车的context
+
+    public static boolean columnEval = false; //叶子量词结点按pattern的列式存储批量计算bfunction
+
     /*所有pattern*/
     protected Map<String, Pattern> patternMap;
 
@@ -58,7 +93,9 @@ public abstract class AbstractCheckerBuilder implements CheckerType{
 
     private int taskNum = 8;
 
-    private ExecutorService checkExecutorService;
+    private ForkJoinPool checkExecutorService;
+
+    private ExecutorService ruleExecutorService; //规则间并发检测，ruleTaskNum为1时为null
 
     protected ChangeHandler changeHandler;
 
@@ -108,6 +145,8 @@ public abstract class AbstractCheckerBuilder implements CheckerType{
             this.checkType = CON_TYPE;
         } else if("gain".equals(technique.toLowerCase())) {
             this.checkType = GAIN_TYPE;
+        } else if("cgain".equals(technique.toLowerCase())) {
+            this.checkType = CGAIN_TYPE;
         } else if ("cpcc".equals(technique.toLowerCase())) {
             this.checkType = CONPCC_TYPE;
         } else {
@@ -134,7 +173,197 @@ public abstract class AbstractCheckerBuilder implements CheckerType{
             }
         }
 
-        this.checkExecutorService = Executors.newFixedThreadPool(taskNum);
+        this.checkExecutorService = new ForkJoinPool(taskNum);
+
+        //ruleTaskNum
+        String ruleTaskNumStr = properties.getProperty("ruleTaskNum");
+        if (ruleTaskNumStr == null || "1".equals(ruleTaskNumStr)) {
+            this.ruleExecutorService = null;
+        }
+        else if (ruleTaskNumStr.matches("[0-9]+") && Integer.parseInt(ruleTaskNumStr) > 1) {
+            if (this.checkType == GAIN_TYPE) {
+                System.out.println("[INFO] ruleTaskNum不支持GAIN");
+                System.exit(1);
+            }
+            this.ruleExecutorService = Executors.newFixedThreadPool(Integer.parseInt(ruleTaskNumStr));
+        }
+        else {
+            System.out.println("[INFO] ruleTaskNum项配置错误：" + ruleTaskNumStr);
+            System.exit(1);
+        }
+
+        //cct
+        String cctType = properties.getProperty("cct");
+        if (cctType == null || "object".equals(cctType.toLowerCase())) {
+            arenaCCT = false;
+            streamEval = false;
+        }
+        else if ("arena".equals(cctType.toLowerCase())) {
+            if (this.checkType != ECC_TYPE && this.checkType != PCC_TYPE) {
+                System.out.println("[INFO] cct=arena仅支持ECC和PCC：" + technique);
+                System.exit(1);
+            }
+            arenaCCT = true;
+        }
+        else if ("stream".equals(cctType.toLowerCase())) {
+            if (this.checkType != ECC_TYPE) {
+                System.out.println("[INFO] cct=stream仅支持ECC：" + technique);
+                System.exit(1);
+            }
+            streamEval = true;
+        }
+        else {
+            System.out.println("[INFO] cct项配置错误：" + cctType);
+            System.exit(1);
+        }
+
+        //linkLimit
+        String linkLimitStr = properties.getProperty("linkLimit");
+        if (linkLimitStr == null) {
+            linkLimit = -1;
+        }
+        else if (linkLimitStr.matches("[0-9]+") && Integer.parseInt(linkLimitStr) > 0) {
+            linkLimit = Integer.parseInt(linkLimitStr);
+        }
+        else {
+            System.out.println("[INFO] linkLimit项配置错误：" + linkLimitStr);
+            System.exit(1);
+        }
+
+        //linkPolicy
+        String linkPolicyStr = properties.getProperty("linkPolicy");
+        if (linkPolicyStr == null || "first".equals(linkPolicyStr.toLowerCase())) {
+            linkPolicy = LINK_FIRST;
+        }
+        else if ("newest".equals(linkPolicyStr.toLowerCase())) {
+            linkPolicy = LINK_NEWEST;
+        }
+        else if ("distinct".equals(linkPolicyStr.toLowerCase())) {
+            linkPolicy = LINK_DISTINCT;
+        }
+        else {
+            System.out.println("[INFO] linkPolicy项配置错误：" + linkPolicyStr);
+            System.exit(1);
+        }
+
+        //bfuncCache
+        String bfuncCacheStr = properties.getProperty("bfuncCache");
+        if (bfuncCacheStr == null) {
+            BFuncCache.setCapacity(0);
+        }
+        else if (bfuncCacheStr.matches("[0-9]+")) {
+            BFuncCache.setCapacity(Integer.parseInt(bfuncCacheStr));
+        }
+        else {
+            System.out.println("[INFO] bfuncCache项配置错误：" + bfuncCacheStr);
+            System.exit(1);
+        }
+
+        //evaluation
+        String evaluation = properties.getProperty("evaluation");
+        if (evaluation == null || "full".equals(evaluation.toLowerCase())) {
+            twoPhaseEval = false;
+        }
+        else if ("two-phase".equals(evaluation.toLowerCase())) {
+            if (this.checkType == GAIN_TYPE) {
+                System.out.println("[INFO] evaluation=two-phase不支持GAIN");
+                System.exit(1);
+            }
+            twoPhaseEval = true;
+        }
+        else if ("counting".equals(evaluation.toLowerCase())) {
+            if (this.checkType != PCC_TYPE || arenaCCT) {
+                System.out.println("[INFO] evaluation=counting仅支持PCC（cct=object）：" + technique);
+                System.exit(1);
+            }
+            twoPhaseEval = true; //link在求值后生成
+            countingEval = true;
+        }
+        else {
+            System.out.println("[INFO] evaluation项配置错误：" + evaluation);
+            System.exit(1);
+        }
+
+        //linkTracking
+        String linkTracking = properties.getProperty("linkTracking");
+        if (linkTracking == null || "all".equals(linkTracking.toLowerCase())) {
+            violationLinks = false;
+        }
+        else if ("violation".equals(linkTracking.toLowerCase())) {
+            violationLinks = true;
+        }
+        else {
+            System.out.println("[INFO] linkTracking项配置错误：" + linkTracking);
+            System.exit(1);
+        }
+
+        //spatialIndex
+        String spatialIndex = properties.getProperty("spatialIndex");
+        if (spatialIndex == null || "none".equals(spatialIndex.toLowerCase())) {
+            gridIndex = false;
+        }
+        else if ("grid".equals(spatialIndex.toLowerCase())) {
+            if (this.checkType == GAIN_TYPE || this.checkType == CGAIN_TYPE || arenaCCT || streamEval) {
+                System.out.println("[INFO] spatialIndex=grid仅支持cct=object，不支持GAIN和CGAIN：" + technique);
+                System.exit(1);
+            }
+            gridIndex = true;
+        }
+        else {
+            System.out.println("[INFO] spatialIndex项配置错误：" + spatialIndex);
+            System.exit(1);
+        }
+
+        //plateIndex
+        String plateIndexStr = properties.getProperty("plateIndex");
+        if (plateIndexStr == null || "none".equals(plateIndexStr.toLowerCase())) {
+            plateIndex = false;
+        }
+        else if ("hash".equals(plateIndexStr.toLowerCase())) {
+            if (this.checkType == GAIN_TYPE || this.checkType == CGAIN_TYPE || arenaCCT || streamEval) {
+                System.out.println("[INFO] plateIndex=hash仅支持cct=object，不支持GAIN和CGAIN：" + technique);
+                System.exit(1);
+            }
+            plateIndex = true;
+        }
+        else {
+            System.out.println("[INFO] plateIndex项配置错误：" + plateIndexStr);
+            System.exit(1);
+        }
+
+        //bfuncLayout
+        String bfuncLayout = properties.getProperty("bfuncLayout");
+        if (bfuncLayout == null || "object".equals(bfuncLayout.toLowerCase())) {
+            columnEval = false;
+        }
+        else if ("column".equals(bfuncLayout.toLowerCase())) {
+            if (this.checkType == GAIN_TYPE || this.checkType == CGAIN_TYPE || arenaCCT || streamEval) {
+                System.out.println("[INFO] bfuncLayout=column仅支持cct=object，不支持GAIN和CGAIN：" + technique);
+                System.exit(1);
+            }
+            columnEval = true;
+        }
+        else {
+            System.out.println("[INFO] bfuncLayout项配置错误：" + bfuncLayout);
+            System.exit(1);
+        }
+
+        //cctBudget
+        String cctBudgetStr = properties.getProperty("cctBudget");
+        if (cctBudgetStr == null) {
+            cctBudget = -1;
+        }
+        else if (cctBudgetStr.matches("[0-9]+") && Long.parseLong(cctBudgetStr) > 0) {
+            if (this.checkType != PCC_TYPE || arenaCCT || countingEval) {
+                System.out.println("[INFO] cctBudget仅支持PCC（cct=object，evaluation不为counting）：" + technique);
+                System.exit(1);
+            }
+            cctBudget = Long.parseLong(cctBudgetStr);
+        }
+        else {
+            System.out.println("[INFO] cctBudget项配置错误：" + cctBudgetStr);
+            System.exit(1);
+        }
 
 
         //context file path
@@ -159,6 +388,16 @@ public abstract class AbstractCheckerBuilder implements CheckerType{
                 System.exit(1);
             }
         }
+
+        //contextStore
+        String contextStore = properties.getProperty("contextStore");
+        if (contextStore != null && "mmap".equals(contextStore.toLowerCase())) {
+            ContextStore.map(dataFilePath); //列文件不存在或数据文件有变化时先生成
+        }
+        else if (contextStore != null && !"heap".equals(contextStore.toLowerCase())) {
+            System.out.println("[INFO] contextStore项配置错误：" + contextStore);
+            System.exit(1);
+        }
         
         String cudaSourceFilePath = "src/main/kernel/kernel.cu";
         //如果是GAIN需要初始化GPU内存
@@ -272,6 +511,7 @@ public abstract class AbstractCheckerBuilder implements CheckerType{
         else if(this.changeHandlerType.contains("change-based")) {
             this.changeHandler = new ChangebasedChangeHandler(patternMap, checkerMap, scheduler, checkerList);
         }
+        this.changeHandler.setRuleExecutorService(ruleExecutorService);
     }
 
     private void parsePatternFile(String patternFilePath) {
@@ -408,11 +648,19 @@ public abstract class AbstractCheckerBuilder implements CheckerType{
 
                 Map<String,STNode> stMap = new HashMap<>();
                 buildSyntaxTree(formulaNode.getChildNodes(), treeHead, stMap, ruleFilePath);
+                if (stMap.size() > Config.MAX_PARAN_NUM) { //link以定长元组存储
+                    System.out.println("[INFO] rule中的量词个数超过" + Config.MAX_PARAN_NUM + "：" + idNode.getTextContent());
+                    System.exit(1);
+                }
 
                 assert treeHead.hasChildNodes():"[INFO] Create syntax tree failed !";
 
                 STNode root = (STNode)treeHead.getFirstChild();
                 root.setParentTreeNode(null);
+                if ((checkType == GAIN_TYPE || checkType == CGAIN_TYPE) && !CUnitLayout.isFlattenable(root)) {
+                    System.out.println("[INFO] GAIN和CGAIN不支持and/implies子树中含有量词的rule：" + idNode.getTextContent());
+                    System.exit(1);
+                }
 
                 Checker checker = null;
                 if(checkType == PCC_TYPE) {
@@ -421,13 +669,15 @@ public abstract class AbstractCheckerBuilder implements CheckerType{
                 else if (checkType == ECC_TYPE){
                     checker = new EccChecker(idNode.getTextContent(), root, this.patternMap, stMap);
                 } else if(checkType == CON_TYPE){ //CON-C
-                    checker = new ConChecker(idNode.getTextContent(), root, this.patternMap, stMap, taskNum, checkExecutorService);
+                    checker = new ConChecker(idNode.getTextContent(), root, this.patternMap, stMap, checkExecutorService);
                 } else if(checkType == GAIN_TYPE) {
                     checker = new GAINChecker(idNode.getTextContent(), root, this.patternMap, stMap,
                             kernelFilePath, //kernel function
                             contexts, cuContext, gpuResult); //GPU memory
+                } else if(checkType == CGAIN_TYPE) {
+                    checker = new CGAINChecker(idNode.getTextContent(), root, this.patternMap, stMap, checkExecutorService);
                 } else if(checkType == CONPCC_TYPE) {
-                    checker = new ConPccChecker(idNode.getTextContent(), root, this.patternMap, stMap, taskNum, checkExecutorService);
+                    checker = new ConPccChecker(idNode.getTextContent(), root, this.patternMap, stMap, checkExecutorService);
                 }
 
                 checkerList.add(checker);
@@ -498,6 +748,15 @@ public abstract class AbstractCheckerBuilder implements CheckerType{
                         break;
                     case "bfunction":
                         stNode = new STNode(e.getAttribute("name"), STNode.BFUNC_NODE);
+                        stNode.setFuncType(BFuncHelper.resolve(e.getAttribute("name")));
+                        if (stNode.getFuncType() == -1) {
+                            System.out.println("[INFO] '" + ruleFilePath +  "'文件中存在非法的bfunction：" + e.getAttribute("name"));
+                            System.exit(1);
+                        }
+                        else if (checkType == GAIN_TYPE && !BFuncRegistry.isGPUSupported(stNode.getFuncType())) {
+                            System.out.println("[INFO] GAIN不支持bfunction：" + e.getAttribute("name"));
+                            System.exit(1);
+                        }
                         break;
                     default:
                         System.out.println("[INFO] '" + ruleFilePath +  "'文件中存在非法的一致性规则标识符：" + nodeName);
@@ -523,6 +782,9 @@ public abstract class AbstractCheckerBuilder implements CheckerType{
 
     public void shutdown() {
         checkExecutorService.shutdown();
+        if (ruleExecutorService != null) {
+            ruleExecutorService.shutdown();
+        }
         if(checkType == GAIN_TYPE) {
             GPUContextMemory.getInstance(contexts).free();
             for (Checker checker : checkerList) {
@@ -550,10 +812,10 @@ public abstract class AbstractCheckerBuilder implements CheckerType{
                     c = new EccChecker(checker);
                 }
                 else if(checkType == CON_TYPE) {
-                    c = new ConChecker(checker, taskNum, this.checkExecutorService);
+                    c = new ConChecker(checker, this.checkExecutorService);
                 }
                 else if(checkType == CONPCC_TYPE) {
-                    c = new ConPccChecker(checker, taskNum, this.checkExecutorService);
+                    c = new ConPccChecker(checker, this.checkExecutorService);
                 }
                 else {
                     assert false:"Type Error.";
@@ -595,6 +857,18 @@ public abstract class AbstractCheckerBuilder implements CheckerType{
     }
 
 
+    /**
+     * 所有rule各次检测的violated link总数（含未输出的link）
+     * @return
+     */
+    protected long violatedCount() {
+        long count = 0L;
+        for (Checker checker : checkerList) {
+            count += checker.getViolatedCount();
+        }
+        return count;
+    }
+
     protected int computeWorkload() {
         int workload = 0;
         for(Checker checker: checkerList) {
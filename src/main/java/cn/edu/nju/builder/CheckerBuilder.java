@@ -1,12 +1,12 @@
 package cn.edu.nju.builder;
 
+import cn.edu.nju.bfunc.BFuncCache;
 import cn.edu.nju.checker.Checker;
 import cn.edu.nju.util.LogFileHelper;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 
 /**
  * Created by njucjc on 2017/10/23.
@@ -19,20 +19,26 @@ public class CheckerBuilder  extends AbstractCheckerBuilder implements Runnable{
 
     @Override
     public void run() {
-        List<String> contextList;
+        String filePath;
         if("time".equals(this.changeHandlerType.split("-")[1])) {
-            contextList = fileReader(this.dataFilePath);
+            filePath = this.dataFilePath;
         }
         else {
-            contextList = fileReader(this.changeFilePath);
+            filePath = this.changeFilePath;
         }
+        int total = countLines(filePath); //逐行读取，不把整个文件读入内存
         System.out.println("[INFO] 开始一致性检测......");
         int count = 0;
         long startTime = System.nanoTime();
-        for(String change : contextList) {
-            System.out.print("[INFO] 当前进度: " + (count + 1) + "/" + contextList.size() + '\r');
-            changeHandler.doContextChange(count, change);
-            count++;
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(filePath))) {
+            String change;
+            while ((change = bufferedReader.readLine()) != null) {
+                System.out.print("[INFO] 当前进度: " + (count + 1) + "/" + total + '\r');
+                changeHandler.doContextChange(count, change);
+                count++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
         scheduler.reset();
         changeHandler.doCheck();
@@ -44,11 +50,27 @@ public class CheckerBuilder  extends AbstractCheckerBuilder implements Runnable{
         System.out.println();
         System.out.println("[INFO] 一致性检测完毕......");
         LogFileHelper.getLogger().info("Total INC: " + incCount, true);
+        LogFileHelper.getLogger().info("Total violated links: " + violatedCount(), true);
         LogFileHelper.getLogger().info("Total checking time: " + (endTime - startTime) / 1000000 + " ms", true);
+        if (BFuncCache.isEnabled()) {
+            LogFileHelper.getLogger().info("BFunc cache hits: " + BFuncCache.getHits() + ", misses: " + BFuncCache.getMisses(), true);
+        }
         accuracy(LogFileHelper.logFilePath);
         shutdown();
     }
 
+    private int countLines(String filePath) {
+        int count = 0;
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(filePath))) {
+            while (bufferedReader.readLine() != null) {
+                count++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return count;
+    }
+
     public static void main(String[] args) {
         CheckerBuilder checkerBuilder = new CheckerBuilder("config.properties");
     }
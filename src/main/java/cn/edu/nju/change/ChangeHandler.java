@@ -7,8 +7,12 @@ import cn.edu.nju.context.ContextParser;
 import cn.edu.nju.pattern.Pattern;
 import cn.edu.nju.scheduler.Scheduler;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Created by njucjc at 2018/1/23
@@ -24,6 +28,8 @@ public abstract class ChangeHandler {
 
     protected ContextParser contextParser;
 
+    private ExecutorService ruleExecutorService; //规则间并发检测的线程池，为null时顺序检测
+
     public long timeCount = 0L;
 
     public ChangeHandler(Map<String, Pattern> patternMap, Map<String, Checker> checkerMap, Scheduler scheduler, List<Checker> checkerList) {
@@ -48,26 +54,80 @@ public abstract class ChangeHandler {
             return contextParser.parseContext(num, change);
         }
     }
+    public void setRuleExecutorService(ExecutorService ruleExecutorService) {
+        this.ruleExecutorService = ruleExecutorService;
+    }
+
     public void doCheck() {
         long start = System.nanoTime();
+        //调度在当前线程中按规则顺序进行
+        List<Checker> scheduledList = new ArrayList<>();
         for(Checker checker : checkerList) {
             if(scheduler.schedule(checker.getName())) {
+                scheduledList.add(checker);
+            }
+        }
+
+        if (ruleExecutorService == null || scheduledList.size() <= 1) {
+            for (Checker checker : scheduledList) {
                 checker.doCheck();
             }
         }
+        else {
+            List<Future<Boolean>> resultList = new ArrayList<>();
+            for (Checker checker : scheduledList) {
+                resultList.add(ruleExecutorService.submit(checker::doCheck));
+            }
+            //等待全部规则检测完毕后才处理下一个变化，某条规则出错时也不提前返回
+            Throwable failure = null;
+            boolean interrupted = false;
+            for (Future<Boolean> result : resultList) {
+                while (true) {
+                    try {
+                        result.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            failure = e.getCause();
+                        }
+                        break;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            //与顺序检测一致，抛出第一个出错规则的异常
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            else if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+        }
+
+        //按规则顺序写入日志，输出与顺序检测一致
+        for (Checker checker : scheduledList) {
+            checker.flushLog();
+        }
         long end = System.nanoTime();
         timeCount += (end -start);
     }
 
-    protected final void deleteChange(String timestamp, String  patternId) {
+    protected final void deleteChange(long time, String  patternId) {
         Pattern pattern = patternMap.get(patternId);
         if (pattern == null) {
             System.out.println("[INFO] '"+ AbstractCheckerBuilder.changeFilePath + "'文件中存在不可识别操作内容：" + patternId);
             System.exit(1);
         }
         Checker checker = checkerMap.get(patternId);
-        checker.delete(patternId, timestamp);
-     //   pattern.deleteFirstByTime(timestamp);
+        checker.delete(patternId, time);
+     //   pattern.deleteFirstByTime(time);
     }
 
     protected final void additionChange(String patternId, Context context) {
@@ -5,6 +5,7 @@ import cn.edu.nju.checker.Checker;
 import cn.edu.nju.pattern.Pattern;
 import cn.edu.nju.scheduler.Scheduler;
 import cn.edu.nju.context.Context;
+import cn.edu.nju.context.ContextStore;
 import java.util.List;
 import java.util.Map;
 
@@ -30,12 +31,12 @@ public class ChangebasedChangeHandler extends ChangeHandler {
             additionChange(patternId, parseContext(num, change));
         }
         else if (op.equals("-")) {
-            deleteChange(parseContext(num, change).getTimestamp(), patternId);
+            deleteChange(contextParser.parseChangeTime(strs), patternId); //删除只需时间戳
         }
         else {
             System.out.println("[INFO] '"+ AbstractCheckerBuilder.changeFilePath + "'文件中存在不可识别操作类型：" + op);
             System.exit(1);
         }
-
+        ContextStore.reclaim(); //回收已过期或不属于pattern的context所占的行
     }
 }
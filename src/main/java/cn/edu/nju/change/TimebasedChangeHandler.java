@@ -2,6 +2,7 @@ package cn.edu.nju.change;
 
 import cn.edu.nju.checker.Checker;
 import cn.edu.nju.context.Context;
+import cn.edu.nju.context.ContextStore;
 import cn.edu.nju.pattern.Pattern;
 import cn.edu.nju.scheduler.Scheduler;
 
@@ -21,17 +22,17 @@ public class TimebasedChangeHandler extends ChangeHandler{
     @Override
     public void doContextChange(int num, String change) {
         Context context = parseContext(num, change);
-        Set<String> timeSet = new TreeSet<>();
+        Set<Long> timeSet = new TreeSet<>();
         //按升序收集过期时间
         for(String key : patternMap.keySet()) {
             Pattern pattern = patternMap.get(key);
-            timeSet.addAll(pattern.getOutOfDateTimes(context.getTimestamp()));
+            timeSet.addAll(pattern.getOutOfDateTimes(context.getTime()));
         }
 
         //按时间顺序删除context
-        for(String timestamp : timeSet) {
+        for(long time : timeSet) {
             for (String patternId : patternMap.keySet()) {
-                deleteChange(timestamp, patternId);
+                deleteChange(time, patternId);
             }
             scheduler.update("");//time-based不需要参数
             doCheck();
@@ -44,5 +45,6 @@ public class TimebasedChangeHandler extends ChangeHandler{
         }
         scheduler.update("");//time-based不需要参数
         doCheck();
+        ContextStore.reclaim(); //回收已过期或不属于pattern的context所占的行
     }
 }
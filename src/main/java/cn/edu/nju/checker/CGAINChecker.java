@@ -0,0 +1,311 @@
+package cn.edu.nju.checker;
+
+import cn.edu.nju.context.Context;
+import cn.edu.nju.node.CUnitLayout;
+import cn.edu.nju.node.NodeType;
+import cn.edu.nju.node.STNode;
+import cn.edu.nju.pattern.ContextColumns;
+import cn.edu.nju.pattern.Pattern;
+import cn.edu.nju.util.BFuncHelper;
+import cn.edu.nju.util.LinkHelper;
+import cn.edu.nju.util.LinkSet;
+import cn.edu.nju.util.Links;
+import cn.edu.nju.util.ParamStack;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * GAIN的CPU实现：与GAINChecker采用相同的c-unit展开方式，展开后的CCT只保存在真值数组中，
+ * 每个c-unit的所有c-copy在ForkJoinPool上并行求值，由内层c-unit到外层逐层进行。
+ * 根结点为假时再根据真值数组自顶向下生成link，不为每个结点保存link
+ */
+public class CGAINChecker extends Checker {
+    private static final int MIN_CCOPY_NUM = 256; //每个任务至少求值的c-copy个数
+
+    private CUnitLayout layout;
+
+    private int stSize;
+
+    private int [] branchSize;
+
+    private List<Integer> cunits;
+
+    /* 按重排序后的结点编号存放的语法树 */
+    private int [] parent;
+
+    private int [] leftChild;
+
+    private int [] rightChild;
+
+    private int [] nodeType;
+
+    private int [] funcType;
+
+    /* 量词结点本次检测时的context集合（列式视图） */
+    private ContextColumns [] nodeColumns;
+
+    private boolean [] truthValues = new boolean[0];
+
+    private ForkJoinPool checkExecutorService;
+
+    public CGAINChecker(String name, STNode stRoot, Map<String, Pattern> patternMap, Map<String, STNode> stMap, ForkJoinPool checkExecutorService) {
+        super(name, stRoot, patternMap, stMap);
+        init(checkExecutorService);
+    }
+
+    public CGAINChecker(Checker checker, ForkJoinPool checkExecutorService) {
+        super(checker);
+        init(checkExecutorService);
+    }
+
+    private void init(ForkJoinPool checkExecutorService) {
+        this.checkExecutorService = checkExecutorService;
+        this.layout = new CUnitLayout(this.stRoot, this.patternMap);
+        this.stSize = layout.getSTSize();
+        this.branchSize = layout.getBranchSize();
+        this.cunits = layout.getCunits();
+
+        this.parent = new int[stSize];
+        this.leftChild = new int[stSize];
+        this.rightChild = new int[stSize];
+        this.nodeType = new int[stSize];
+        this.funcType = new int[stSize];
+        this.nodeColumns = new ContextColumns[stSize];
+
+        STNode [] constraintNodes = layout.getConstraintNodes();
+        for(int i = 0; i < stSize; i++) {
+            STNode p = (STNode) constraintNodes[i].getParentTreeNode();
+            STNode l = (STNode) constraintNodes[i].getFirstChild();
+            STNode r = (STNode) constraintNodes[i].getLastChild();
+
+            parent[i] = p != null ? p.getNodeNum() : -1;
+            leftChild[i] = l != null ? l.getNodeNum() : -1;
+            rightChild[i] = r != null ? r.getNodeNum() : -1;
+            nodeType[i] = constraintNodes[i].getNodeType();
+            funcType[i] = constraintNodes[i].getFuncType();
+        }
+    }
+
+    @Override
+    public boolean doCheck() {
+        checkTimes++;
+        int cctSize = layout.computeBranchSize();
+        if (truthValues.length < cctSize) {
+            truthValues = new boolean[Math.max(cctSize, truthValues.length * 2)];
+        }
+
+        STNode [] constraintNodes = layout.getConstraintNodes();
+        for (int i = 0; i < stSize; i++) {
+            if (nodeType[i] == NodeType.UNIVERSAL_NODE || nodeType[i] == NodeType.EXISTENTIAL_NODE) {
+                nodeColumns[i] = patternMap.get(constraintNodes[i].getContextSetName()).getColumns();
+            }
+        }
+
+        for(int i = cunits.size() - 2; i >= 0; i--) {
+            int cunitEnd = cunits.get(i);
+            int ccopyNum = layout.computeCCopyNum(cunitEnd);
+            if(ccopyNum == 0) {
+                continue;
+            }
+            int granularity = Math.max(MIN_CCOPY_NUM, ccopyNum / (checkExecutorService.getParallelism() * 8));
+            checkExecutorService.invoke(new CCopyTask(cunits.get(i + 1) + 1, cunitEnd, 0, ccopyNum - 1, granularity));
+        }
+
+        boolean value = truthValues[cctSize - 1];
+
+        clearCriticalSet();
+
+        if(!value) {
+            addViolatedLinks(linkOf(stSize - 1, cctSize - 1, ParamStack.current()));
+        }
+
+        return value;
+    }
+
+    /**
+     * 计算c-unit根结点在第tid个c-copy中的偏移，同时由内到外取出外层量词绑定的context在ContextStore中的行号
+     */
+    private int calcOffset(int node, int tid, int [] params) {
+        int offset = branchSize[node];
+        int current = node;
+        int index = 0;
+        int tmp = tid;
+        while (parent[current] != -1) {
+            int p = parent[current];
+            int type = nodeType[p];
+            if (type == NodeType.UNIVERSAL_NODE || type == NodeType.EXISTENTIAL_NODE) {
+                int len = nodeColumns[p].size();
+                int branchIndex = tmp % len;
+                tmp /= len;
+                params[index++] = nodeColumns[p].getRow(branchIndex);
+                offset += branchIndex * branchSize[current];
+            }
+            else if ((type == NodeType.AND_NODE || type == NodeType.IMPLIES_NODE) && rightChild[p] == current) {
+                offset += branchSize[leftChild[p]];
+            }
+            current = p;
+        }
+        return offset - 1;
+    }
+
+    /**
+     * 量词结点的第i个子结点的偏移（子结点按pattern中的顺序存放在结点之前）
+     */
+    private int childOffset(int node, int offset, int i) {
+        int step = branchSize[leftChild[node]];
+        return offset - (nodeColumns[node].size() - i - 1) * step - 1;
+    }
+
+    /**
+     * 对第tid个c-copy中c-unit的所有结点求值，结点编号小的先求值
+     * @param params 由调用者复用的数组，params[0]为最内层量词的context的行号
+     */
+    private void evaluation(int cunitBegin, int cunitEnd, int tid, int [] params) {
+        params[0] = -1;
+        params[1] = -1;
+        int rootOffset = calcOffset(cunitEnd, tid, params);
+        for (int node = cunitBegin; node <= cunitEnd; node++) {
+            int offset = rootOffset - (cunitEnd - node);
+            boolean value;
+            switch (nodeType[node]) {
+                case NodeType.UNIVERSAL_NODE: {
+                    value = true;
+                    for (int i = 0; i < nodeColumns[node].size() && value; i++) {
+                        value = truthValues[childOffset(node, offset, i)];
+                    }
+                    break;
+                }
+                case NodeType.EXISTENTIAL_NODE: {
+                    value = false;
+                    for (int i = 0; i < nodeColumns[node].size() && !value; i++) {
+                        value = truthValues[childOffset(node, offset, i)];
+                    }
+                    break;
+                }
+                case NodeType.AND_NODE: {
+                    value = truthValues[offset - 1] && truthValues[offset - (branchSize[rightChild[node]] + 1)];
+                    break;
+                }
+                case NodeType.IMPLIES_NODE: {
+                    value = !truthValues[offset - (branchSize[rightChild[node]] + 1)] || truthValues[offset - 1];
+                    break;
+                }
+                case NodeType.NOT_NODE: {
+                    value = !truthValues[offset - 1];
+                    break;
+                }
+                default: { //BFUNC
+                    value = BFuncHelper.bfun(funcType[node], params[0], params[1] != -1 ? params[1] : params[0]);
+                    break;
+                }
+            }
+            truthValues[offset] = value;
+        }
+    }
+
+    /**
+     * 根据真值数组生成link，规则与Checker.linkOf一致
+     * @param node 结点编号
+     * @param offset 结点在展开后的CCT中的偏移
+     * @param param 由外到内的context
+     * @return
+     */
+    private Links linkOf(int node, int offset, ParamStack param) {
+        boolean value = truthValues[offset];
+        switch (nodeType[node]) {
+            case NodeType.UNIVERSAL_NODE:
+            case NodeType.EXISTENTIAL_NODE: {
+                //全称量词取违反（为真时取全部）子结点，存在量词取满足（为假时取全部）子结点
+                boolean all = nodeType[node] == NodeType.UNIVERSAL_NODE ? value : !value;
+                ContextColumns columns = nodeColumns[node];
+                if (columns.size() == 0) { //与CCT中的叶子量词结点一致
+                    return LinkSet.of(LinkHelper.pack(param));
+                }
+                LinkSet link = new LinkSet();
+                for (int i = 0; i < columns.size(); i++) {
+                    int child = childOffset(node, offset, i);
+                    if (all || truthValues[child] == value) {
+                        param.pushRow(columns.getRow(i));
+                        link.addAll(linkOf(leftChild[node], child, param));
+                        param.pop();
+                    }
+                }
+                return link;
+            }
+            case NodeType.AND_NODE: {
+                int left = offset - (branchSize[rightChild[node]] + 1);
+                int right = offset - 1;
+                if (truthValues[left] && !truthValues[right]) {
+                    return linkOf(rightChild[node], right, param);
+                }
+                else if (!truthValues[left] && truthValues[right]) {
+                    return linkOf(leftChild[node], left, param);
+                }
+                return LinkHelper.linkCartesian(linkOf(leftChild[node], left, param), linkOf(rightChild[node], right, param));
+            }
+            case NodeType.IMPLIES_NODE: {
+                int left = offset - (branchSize[rightChild[node]] + 1);
+                int right = offset - 1;
+                if (value) {
+                    return LinkHelper.linkCartesian(linkOf(leftChild[node], left, param), linkOf(rightChild[node], right, param));
+                }
+                return linkOf(rightChild[node], right, param);
+            }
+            case NodeType.NOT_NODE: {
+                return linkOf(leftChild[node], offset - 1, param);
+            }
+            default: {
+                return LinkSet.of(LinkHelper.pack(param));
+            }
+        }
+    }
+
+    private class CCopyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int cunitBegin;
+
+        private final int cunitEnd;
+
+        private final int start;
+
+        private final int end;
+
+        private final int granularity;
+
+        CCopyTask(int cunitBegin, int cunitEnd, int start, int end, int granularity) {
+            this.cunitBegin = cunitBegin;
+            this.cunitEnd = cunitEnd;
+            this.start = start;
+            this.end = end;
+            this.granularity = granularity;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start + 1 <= granularity) {
+                int [] params = new int[2]; //同一任务的c-copy复用
+                for (int tid = start; tid <= end; tid++) {
+                    evaluation(cunitBegin, cunitEnd, tid, params);
+                }
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            invokeAll(new CCopyTask(cunitBegin, cunitEnd, start, mid, granularity),
+                    new CCopyTask(cunitBegin, cunitEnd, mid + 1, end, granularity));
+        }
+    }
+
+    @Override
+    public boolean add(String patternId, Context context) {
+        return addContextToPattern(patternId, context); //不维护CCT，每次检测时重新展开
+    }
+
+    @Override
+    public boolean delete(String patternId, long time) {
+        return deleteContextFromPattern(patternId, time);
+    }
+}
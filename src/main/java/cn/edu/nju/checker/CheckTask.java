@@ -1,15 +1,14 @@
 package cn.edu.nju.checker;
 
-import cn.edu.nju.context.Context;
 import cn.edu.nju.node.CCTNode;
+import cn.edu.nju.util.ParamStack;
 
-import java.util.List;
 import java.util.concurrent.Callable;
 
 public class CheckTask implements Callable<Result> {
     private CCTNode subcctRoot;
 
-    private List<Context> param;
+    private ParamStack param;
 
     private Checker checker;
 
@@ -17,7 +16,7 @@ public class CheckTask implements Callable<Result> {
 
     private int end;
 
-    public CheckTask(CCTNode subcctRoot, List<Context> param, Checker checker, int start, int end) {
+    public CheckTask(CCTNode subcctRoot, ParamStack param, Checker checker, int start, int end) {
         this.subcctRoot = subcctRoot;
         this.param = param;
         this.checker = checker;
@@ -41,7 +40,7 @@ public class CheckTask implements Callable<Result> {
     }
 
 
-    public void setParam(List<Context> param) {
+    public void setParam(ParamStack param) {
         this.param = param;
     }
 }
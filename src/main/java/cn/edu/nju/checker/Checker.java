@@ -1,14 +1,24 @@
 package cn.edu.nju.checker;
 
+import cn.edu.nju.bfunc.BFuncRegistry;
+import cn.edu.nju.builder.AbstractCheckerBuilder;
 import cn.edu.nju.context.Context;
+import cn.edu.nju.context.ContextStore;
+import cn.edu.nju.node.CCTArena;
 import cn.edu.nju.node.CCTNode;
+import cn.edu.nju.node.ChildDeque;
 import cn.edu.nju.node.NodeType;
 import cn.edu.nju.node.STNode;
 import cn.edu.nju.node.TreeNode;
+import cn.edu.nju.pattern.ContextColumns;
 import cn.edu.nju.pattern.Pattern;
+import cn.edu.nju.pattern.SequenceList;
 import cn.edu.nju.util.BFuncHelper;
 import cn.edu.nju.util.LinkHelper;
-import cn.edu.nju.util.TimestampHelper;
+import cn.edu.nju.util.LinkSet;
+import cn.edu.nju.util.Links;
+import cn.edu.nju.util.ParamStack;
+import cn.edu.nju.util.LogFileHelper;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -24,12 +34,15 @@ public abstract class Checker {
     /* CCT root for constraint */
     protected CCTNode cctRoot;
 
+    /* CCT stored in primitive arrays, used instead of cctRoot when cct=arena */
+    protected CCTArena cctArena;
+
     /*Syntax tree for constraint*/
     protected STNode stRoot;
 
     protected Map<String, Pattern> patternMap;
 
-    private Set<String> incLinkSet;
+    private Set<Long> incLinkSet;
 
     protected int checkTimes = 0;
 
@@ -43,11 +56,30 @@ public abstract class Checker {
 
     private Set<String> incDelSet;
 
-    private Set<String> criticalSet;
+    private Set<Integer> criticalSet;
+
+    /* 本次检测新发现的link，检测结束后由ChangeHandler按规则顺序写入日志 */
+    private StringBuilder logBuffer = new StringBuilder();
 
 
     protected int maxLinkSize = 0;
 
+    protected long violatedCount = 0L; //各次检测根结点violated link数之和，不受linkLimit限制
+
+    /* 配置cctBudget时已展开的量词子树（子树中含有量词的量词子结点），按最近一次访问排序，最久未访问的在前 */
+    private LinkedHashMap<CCTNode, STNode> residentUnits;
+
+    /* 已换出的子树根，按其子树涉及的pattern索引，pattern变化时将其标记为需要重新求值 */
+    private Map<String, Set<CCTNode>> evictedMap;
+
+    /* 作为换出单位的语法树结点（量词的子结点且其下含有量词） -> 其子树涉及的pattern */
+    private Map<STNode, List<String>> unitPatterns;
+
+    private long residentNodes = 0L; //常驻的CCT结点数，创建和删除结点时增减
+
+    /* linkTracking=violation时各语法树结点需要保存link的取值，见CCTNode.needsLink */
+    private Map<STNode, Integer> linkMasks;
+
 //    private Set<String> incUnpreSet;
 
 
@@ -74,8 +106,7 @@ public abstract class Checker {
         }
 
         //初始化CCT
-        this.cctRoot = new CCTNode(stRoot.getNodeName(), stRoot.getNodeType());
-        buildCCT(stRoot, this.cctRoot);
+        initCCT();
     }
 
     public Checker(Checker checker) {
@@ -97,15 +128,57 @@ public abstract class Checker {
 
         this.timeCount = checker.timeCount;
         this.maxLinkSize = checker.maxLinkSize;
+        this.violatedCount = checker.violatedCount;
 
         clearCCTMap();
 
-        this.cctRoot = new CCTNode(stRoot.getNodeName(), stRoot.getNodeType());
-        buildCCT(stRoot, this.cctRoot);
+        initCCT();
     }
 
     protected Checker() {}
 
+    /**
+     * 只用于子树求值的辅助checker，不构建CCT，索引求值时需要读取pattern和语法树
+     * @param patternMap
+     * @param stMap
+     */
+    protected Checker(Map<String, Pattern> patternMap, Map<String, STNode> stMap) {
+        this.patternMap = patternMap;
+        this.stMap = stMap;
+    }
+
+    private void initCCT() {
+        if (AbstractCheckerBuilder.violationLinks) {
+            this.linkMasks = new IdentityHashMap<>();
+            calcLinkMask(stRoot, 1, linkMasks); //根结点只需要为假时的link
+        }
+        if (AbstractCheckerBuilder.cctBudget > 0) {
+            this.residentUnits = new LinkedHashMap<>(16, 0.75f, true);
+            this.evictedMap = new HashMap<>();
+            this.unitPatterns = new IdentityHashMap<>();
+            this.residentNodes = 1L; //根结点
+            for (String key : stMap.keySet()) {
+                evictedMap.put(key, Collections.newSetFromMap(new IdentityHashMap<>()));
+                STNode stChild = (STNode) stMap.get(key).getFirstChild();
+                if (containsQuantifier(stChild)) {
+                    Set<String> patterns = new HashSet<>();
+                    collectPatterns(stChild, patterns);
+                    unitPatterns.put(stChild, new ArrayList<>(patterns));
+                }
+            }
+        }
+        if (AbstractCheckerBuilder.streamEval) {
+            return; //不构建CCT，检测时直接遍历pattern
+        }
+        if (AbstractCheckerBuilder.arenaCCT) {
+            this.cctArena = new CCTArena(stRoot, patternMap);
+        }
+        else {
+            this.cctRoot = new CCTNode(stRoot.getNodeName(), stRoot.getNodeType());
+            buildCCT(stRoot, this.cctRoot);
+        }
+    }
+
     public String getName() {
         return name;
     }
@@ -118,11 +191,11 @@ public abstract class Checker {
         return incLinkSet.size();
     }
 
-    protected boolean addIncLink(String link) {
+    protected boolean addIncLink(long link) {
         return incLinkSet.add(link);
     }
 
-    protected Set<String> getIncLinkSet() {
+    protected Set<Long> getIncLinkSet() {
         return incLinkSet;
     }
 
@@ -143,12 +216,12 @@ public abstract class Checker {
         return true;
     }
 
-    protected boolean deleteContextFromPattern(String patternId, String timestamp) {
+    protected boolean deleteContextFromPattern(String patternId, long time) {
         if (!affected(patternId)) {
             return false;
         }
         Pattern pattern = patternMap.get(patternId);
-        if(!pattern.deleteFirstByTime(timestamp)) {
+        if(!pattern.deleteFirstByTime(time)) {
             return false;
         }
         return true;
@@ -165,30 +238,63 @@ public abstract class Checker {
             return false;
         }
 
+        if (cctArena != null) {
+            cctArena.addContext(patternId);
+            return true;
+        }
+        else if (AbstractCheckerBuilder.streamEval) {
+            return true;
+        }
+
         List<CCTNode> criticalNodeList = cctMap.get(patternId);
         STNode stNode = stMap.get(patternId);
         assert stNode.getNodeType() == STNode.EXISTENTIAL_NODE
                 || stNode.getNodeType() == STNode.UNIVERSAL_NODE
                 :"[DEBUG] Type Error.";
+        STNode guard = guardOf((STNode) stNode.getFirstChild());
         for (CCTNode node : criticalNodeList) {
             //更新从关键节点到根节点的状态
             updateNodesToRoot(node);
+            if (node.isIndexed() && !guardHolds(guard, context, node)) {
+                continue; //不满足索引约束，只计入窗口大小
+            }
             //创建一个以context相关联的新子树
             CCTNode newChild = new CCTNode(stNode.getFirstChild().getNodeName(),((STNode)(stNode.getFirstChild())).getNodeType(), context);
-            buildCCT((STNode) stNode.getFirstChild(), newChild);
+            if (residentUnits != null) {
+                residentNodes++;
+            }
+            if (residentUnits != null && unitPatterns.containsKey(stNode.getFirstChild())) {
+                stub((STNode) stNode.getFirstChild(), newChild); //求值时再展开
+            }
+            else {
+                buildCCT((STNode) stNode.getFirstChild(), newChild);
+            }
             //添加到本结点
             node.addChildeNode(newChild);
+            if (AbstractCheckerBuilder.countingEval) {
+                node.addDirtyChild(newChild);
+            }
         }
+        markEvicted(patternId);
 //        System.out.println("[Check add]: " + context);
         return true;
     }
 
 
-    public boolean delete(String patternId, String timestamp) {
-        if(!deleteContextFromPattern(patternId, timestamp)) {
+    public boolean delete(String patternId, long time) {
+        int sizeBefore = affected(patternId) ? patternMap.get(patternId).getContextList().size() : 0;
+        if(!deleteContextFromPattern(patternId, time)) {
             return false;
         }
 
+        if (cctArena != null) {
+            cctArena.deleteContexts(patternId, sizeBefore - patternMap.get(patternId).getContextList().size());
+            return true;
+        }
+        else if (AbstractCheckerBuilder.streamEval) {
+            return true;
+        }
+
         List<CCTNode> criticalNodeList = cctMap.get(patternId);
         STNode stNode = stMap.get(patternId);
         Pattern pattern = patternMap.get(patternId);
@@ -200,20 +306,23 @@ public abstract class Checker {
             //更新从关键节点到根节点的状态
             updateNodesToRoot(node);
 
-            //删除timestamp时刻过期结点
-            List<TreeNode> childTreeNodes = node.getChildTreeNodes();
-            for (TreeNode treeNode : childTreeNodes) {//是否存在结点
-                CCTNode child = (CCTNode)treeNode; //第一个结点
-                if (TimestampHelper.timestampDiff(child.getContext().getTimestamp(), timestamp) >= pattern.getFreshness()) {
+            //删除time时刻过期结点，过期结点总是位于队首
+            ChildDeque<TreeNode> childTreeNodes = (ChildDeque<TreeNode>) node.getChildTreeNodes();
+            int num = 0;
+            for (; num < childTreeNodes.size(); num++) {//是否存在结点
+                CCTNode child = (CCTNode) childTreeNodes.get(num);
+                if (Math.abs(time - ContextStore.getTime(child.getContextRow())) >= pattern.getFreshness()) {
                     removeCriticalNode((STNode) stNode.getFirstChild(), child);
-                    childTreeNodes.remove(treeNode);
+                    node.forgetChild(child);
 //                    System.out.println("[Check delete]: " + child.getContext());
                 }
                 else {
                     break;
                 }
             }
+            childTreeNodes.removeFirst(num);
         }
+        markEvicted(patternId);
         return true;
     }
 
@@ -225,17 +334,56 @@ public abstract class Checker {
      * @param cctRoot
      */
     protected void buildCCT(STNode stRoot, CCTNode cctRoot) {
+        buildCCT(stRoot, cctRoot, outerOf(cctRoot));
+    }
+
+    /**
+     * 根据语法树构造CCT
+     * @param stRoot
+     * @param cctRoot
+     * @param outer 最内层的外层量词绑定的context，没有时为null
+     */
+    private void buildCCT(STNode stRoot, CCTNode cctRoot, Context outer) {
+        if (cctRoot.getContextRow() != -1) {
+            outer = cctRoot.getContext();
+        }
+        if (linkMasks != null) {
+            cctRoot.setLinkMask(linkMasks.get(stRoot));
+        }
         if (!stRoot.hasChildNodes()) {
+            cctRoot.setFuncType(stRoot.getFuncType());
             return ;
         }
         if(stRoot.getNodeType() == STNode.EXISTENTIAL_NODE || stRoot.getNodeType() == STNode.UNIVERSAL_NODE) {
             cctMap.get(stRoot.getContextSetName()).add(cctRoot); //add critical node information
+            cctRoot.setContextSetName(stRoot.getContextSetName());
             STNode stChild = (STNode) stRoot.getFirstChild();
-            for(Context context : patternMap.get(stRoot.getContextSetName()).getContextList()) {
-                //CCT结点创建默认为FC状态
-                CCTNode cctChild = new CCTNode(stChild.getNodeName(), stChild.getNodeType(), context);
-                buildCCT(stChild, cctChild);
-                cctRoot.addChildeNode(cctChild);
+            Pattern pattern = patternMap.get(stRoot.getContextSetName());
+            STNode guard = outer == null ? null : guardOf(stChild);
+            cctRoot.setIndexed(guard != null);
+            List<Context> contexts = pattern.getContextList();
+            if (guard == null) {
+                for(Context context : contexts) {
+                    buildChild(stChild, cctRoot, context, outer);
+                }
+            }
+            else {
+                //只为满足索引约束的context创建子结点，按窗口顺序
+                SequenceList partners = new SequenceList();
+                if (guard.getFuncType() == NodeType.SAME) {
+                    pattern.getPlateIndex().partners(outer, partners);
+                }
+                else {
+                    pattern.getGrid(BFuncRegistry.get(guard.getFuncType()).getDistanceThreshold()).neighbors(outer, partners);
+                    partners.sort();
+                }
+                long headSeq = pattern.getHeadSequence();
+                for (int i = 0; i < partners.size(); i++) {
+                    Context context = contexts.get((int) (partners.get(i) - headSeq));
+                    if (guard.getFuncType() == NodeType.SAME || BFuncHelper.bfun(guard.getFuncType(), context, outer)) {
+                        buildChild(stChild, cctRoot, context, outer);
+                    }
+                }
             }
         }
         else {
@@ -243,14 +391,72 @@ public abstract class Checker {
             for (TreeNode n : childNodes) {
                 STNode stChild = (STNode) n;
                 CCTNode cctChild = new CCTNode(stChild.getNodeName(), stChild.getNodeType());
-                buildCCT(stChild, cctChild);
+                if (residentUnits != null) {
+                    residentNodes++;
+                }
+                buildCCT(stChild, cctChild, outer);
                 cctRoot.addChildeNode(cctChild);
             }
         }
     }
 
+    /**
+     * 为量词结点创建context对应的子结点
+     * @param stChild
+     * @param cctRoot
+     * @param context
+     * @param outer
+     */
+    private void buildChild(STNode stChild, CCTNode cctRoot, Context context, Context outer) {
+        //CCT结点创建默认为FC状态
+        CCTNode cctChild = new CCTNode(stChild.getNodeName(), stChild.getNodeType(), context);
+        if (residentUnits != null) {
+            residentNodes++;
+        }
+        if (residentUnits != null && unitPatterns.containsKey(stChild)) {
+            stub(stChild, cctChild); //求值时再展开
+        }
+        else {
+            buildCCT(stChild, cctChild, outer);
+        }
+        cctRoot.addChildeNode(cctChild);
+    }
+
+    /**
+     * 结点自身或最近的祖先结点绑定的context的行号
+     * @param node
+     * @return 没有时返回-1
+     */
+    private int outerRowOf(CCTNode node) {
+        while (node != null && node.getContextRow() == -1) {
+            node = (CCTNode) node.getParentTreeNode();
+        }
+        return node == null ? -1 : node.getContextRow();
+    }
+
+    private Context outerOf(CCTNode node) {
+        int row = outerRowOf(node);
+        return row == -1 ? null : ContextStore.get(row);
+    }
+
+    /**
+     * 新加入的context是否满足索引量词结点的约束guard，same直接比较车牌号编码
+     * @param guard
+     * @param context
+     * @param quantNode
+     * @return
+     */
+    private boolean guardHolds(STNode guard, Context context, CCTNode quantNode) {
+        int row = outerRowOf(quantNode);
+        if (guard.getFuncType() == NodeType.SAME) {
+            return context.getPlateId() == ContextStore.getPlateId(row);
+        }
+        return BFuncHelper.bfun(guard.getFuncType(), context, ContextStore.get(row));
+    }
+
     protected void build(STNode stRoot, CCTNode cctRoot, int k) {
         if (!stRoot.hasChildNodes()) {
+            cctRoot.setFuncType(stRoot.getFuncType());
             return ;
         }
         if(stRoot.getNodeType() == STNode.EXISTENTIAL_NODE || stRoot.getNodeType() == STNode.UNIVERSAL_NODE) {
@@ -288,11 +494,19 @@ public abstract class Checker {
     protected void removeCriticalNode(STNode stRoot, CCTNode cctRoot) {
         assert stRoot.getNodeType() == cctRoot.getNodeType()
                 :"[DEBUG] Type error:" + stRoot.getNodeName() + " != " + cctRoot.getNodeName();
+        if (residentUnits != null) {
+            residentNodes--;
+            if (cctRoot.getContextRow() != -1 && unitPatterns.containsKey(stRoot)) { //只有子树根需要移出LRU和换出记录
+                forgetUnit(stRoot, cctRoot);
+            }
+        }
+        if(stRoot.getNodeType() == STNode.UNIVERSAL_NODE || stRoot.getNodeType() == STNode.EXISTENTIAL_NODE) {
+            cctMap.get(stRoot.getContextSetName()).remove(cctRoot);//删除相关信息，没有子结点的量词结点也是关键结点
+        }
         if(!cctRoot.hasChildNodes()) {
             return;
         }
         if(stRoot.getNodeType() == STNode.UNIVERSAL_NODE || stRoot.getNodeType() == STNode.EXISTENTIAL_NODE) {
-            cctMap.get(stRoot.getContextSetName()).remove(cctRoot);//删除相关信息
             STNode stChild = (STNode) stRoot.getFirstChild();
 
             //全称量词和存在量词的子节点数由其相关的context set大小决定
@@ -318,8 +532,15 @@ public abstract class Checker {
      * @param node
      */
     private void updateNodesToRoot(CCTNode node) {
+        CCTNode child = null;
         while(node != null) {
-            node.setNodeStatus(CCTNode.PC_STATE); //更新为Partial checking
+            if (node.getNodeStatus() != CCTNode.EC_STATE) { //尚未求值的结点保持EC，计数求值时需全量扫描
+                node.setNodeStatus(CCTNode.PC_STATE); //更新为Partial checking
+            }
+            if (child != null && AbstractCheckerBuilder.countingEval) {
+                node.addDirtyChild(child); //只在量词结点上使用
+            }
+            child = node;
             node = (CCTNode) node.getParentTreeNode();
         }
     }
@@ -330,13 +551,23 @@ public abstract class Checker {
      * @param param
      * @return
      */
-    protected boolean evaluation(CCTNode cctRoot, List<Context> param) {
-        if(cctRoot.getContext() != null) {
-            param.add(cctRoot.getContext());
+    protected boolean evaluation(CCTNode cctRoot, ParamStack param) {
+        if (cctRoot.isEvicted()) {
+            STNode stUnit = stOf(cctRoot);
+            if (residentNodes + unitSize(stUnit) - 1 > AbstractCheckerBuilder.cctBudget) {
+                return unitEval(stUnit, cctRoot, param); //常驻结点数已达上限，不展开
+            }
+            materialize(stUnit, cctRoot);
+        }
+        if(cctRoot.getContextRow() != -1) {
+            param.pushRow(cctRoot.getContextRow());
         }
 
         boolean value = false;
-        if(!cctRoot.hasChildNodes()) {//叶子结点只可能是全称量词、存在量词或bfunc
+        if (cctRoot.isIndexed()) {
+            value = indexedNodeEval(cctRoot, param);
+        }
+        else if(!cctRoot.hasChildNodes()) {//叶子结点只可能是全称量词、存在量词或bfunc
             if(cctRoot.getNodeType() == CCTNode.UNIVERSAL_NODE) {
                 value = true;
             }
@@ -346,19 +577,14 @@ public abstract class Checker {
             else {
                 int size = param.size();
                 assert size >= 1:"[DEBUG] Param error";
-                value = BFuncHelper.bfun(cctRoot.getNodeName(), param.get(size - 1), param.get(size >= 2 ? size - 2:size - 1));
+                value = BFuncHelper.bfun(cctRoot.getFuncType(), param.getRow(size - 1), param.getRow(size >= 2 ? size - 2:size - 1));
             }
             //设置本结点布尔值
             cctRoot.setNodeValue(value);
-            String link = "";
-            for(Context context : param) {
-                link = link + context.toString() + " ";
-            }
-            if(!"".equals(link)) {
-                link = link.substring(0, link.length() - 1);
-            }
             //生成link
-            cctRoot.setLink(link);
+            if (!AbstractCheckerBuilder.twoPhaseEval) {
+                cctRoot.setLink(cctRoot.needsLink(value) ? LinkSet.of(LinkHelper.pack(param)) : null);
+            }
         }
         else {
             if(cctRoot.getNodeType() == CCTNode.NOT_NODE) {
@@ -370,6 +596,10 @@ public abstract class Checker {
             else if(cctRoot.getNodeType() == CCTNode.IMPLIES_NODE) {
                 value = impliesNodeEval(cctRoot, param);
             }
+            else if(AbstractCheckerBuilder.countingEval && (cctRoot.getNodeType() == CCTNode.UNIVERSAL_NODE
+                    || cctRoot.getNodeType() == CCTNode.EXISTENTIAL_NODE)) {
+                value = countingNodeEval(cctRoot, param);
+            }
             else if(cctRoot.getNodeType() == CCTNode.UNIVERSAL_NODE) {
                 value = universalNodeEval(cctRoot, param, 0, cctRoot.getChildTreeNodes().size() - 1).getValue();
             }
@@ -385,23 +615,28 @@ public abstract class Checker {
         //本结点计算完毕就将结点状态更新为NC（无需重算状态）
         cctRoot.setNodeStatus(CCTNode.NC_STATE);
         //返回上一层
-        if (cctRoot.getContext() != null) {
-            param.remove(param.size() - 1);
+        if (cctRoot.getContextRow() != -1) {
+            param.pop();
+            if (residentUnits != null) {
+                residentUnits.get(cctRoot); //更新LRU顺序
+            }
         }
 
         return value;
     }
 
 
-    protected boolean notNodeEval(CCTNode notNode, List<Context> param) {
+    protected boolean notNodeEval(CCTNode notNode, ParamStack param) {
         boolean value = !evaluation((CCTNode) notNode.getFirstChild(), param);
         notNode.setNodeValue(value); //更新结点值
-        notNode.setLink(((CCTNode) notNode.getFirstChild()).getLink()); //更新link信息
+        if (!AbstractCheckerBuilder.twoPhaseEval) {
+            notNode.setLink(notNode.needsLink(value) ? ((CCTNode) notNode.getFirstChild()).getLink() : null); //更新link信息
+        }
         return value;
     }
 
 
-    protected boolean andNodeEval(CCTNode andNode, List<Context> param) {
+    protected boolean andNodeEval(CCTNode andNode, ParamStack param) {
 
         CCTNode leftChild = (CCTNode) andNode.getChildTreeNodes().get(0);
         CCTNode rightChild = (CCTNode) andNode.getChildTreeNodes().get(1);
@@ -412,7 +647,13 @@ public abstract class Checker {
         andNode.setNodeValue(value); //更新结点值
 
         //更新link信息
-        if(leftValue && !rightValue) {
+        if (AbstractCheckerBuilder.twoPhaseEval) {
+            return value;
+        }
+        else if (!andNode.needsLink(value)) {
+            andNode.setLink(null);
+        }
+        else if(leftValue && !rightValue) {
             andNode.setLink(rightChild.getLink());
         }
         else if(!leftValue && rightValue) {
@@ -426,7 +667,7 @@ public abstract class Checker {
     }
 
 
-    protected boolean impliesNodeEval(CCTNode impliesNode, List<Context> param) {
+    protected boolean impliesNodeEval(CCTNode impliesNode, ParamStack param) {
         CCTNode leftChild = (CCTNode) impliesNode.getChildTreeNodes().get(0);
         CCTNode rightChild = (CCTNode) impliesNode.getChildTreeNodes().get(1);
         boolean leftValue = evaluation(leftChild, param);
@@ -435,7 +676,13 @@ public abstract class Checker {
         boolean value =  !leftValue || (leftValue && rightValue);
         impliesNode.setNodeValue(value); //更新结点值
         //更新link信息
-        if(value) {
+        if (AbstractCheckerBuilder.twoPhaseEval) {
+            return value;
+        }
+        else if (!impliesNode.needsLink(value)) {
+            impliesNode.setLink(null);
+        }
+        else if(value) {
             impliesNode.setLink(LinkHelper.linkCartesian(leftChild.getLink(), rightChild.getLink()));
         }
         else {
@@ -446,80 +693,557 @@ public abstract class Checker {
     }
 
 
-    protected  Result universalNodeEval(CCTNode universalNode, List<Context> param,int start, int end) {
+    /**
+     * 量词结点的子结点均为bfunc叶结点时，调用bfunction的批量接口一次计算[start, end]内所有子结点的值
+     * @param quantNode
+     * @param param
+     * @param start
+     * @param end
+     * @return 是否已批量计算
+     */
+    protected boolean batchLeafEval(CCTNode quantNode, ParamStack param, int start, int end) {
+        if (start > end) {
+            return false;
+        }
+        List<TreeNode> childNodes = quantNode.getChildTreeNodes();
+        CCTNode first = (CCTNode) childNodes.get(start);
+        if (first.getNodeType() != CCTNode.BFUNC_NODE) {
+            return false;
+        }
+
+        int num = end - start + 1;
+        EvalBuffers buffers = EvalBuffers.current();
+        int [] rows = buffers.rows(num);
+        for (int i = 0; i < num; i++) {
+            rows[i] = ((CCTNode) childNodes.get(start + i)).getContextRow();
+        }
+        boolean [] result = buffers.result(num);
+        //bfun的第二个参数为外层量词的context，没有外层量词时为子结点自身的context
+        BFuncHelper.bfun(first.getFuncType(), rows, num, param.isEmpty() ? -1 : param.getRow(param.size() - 1), result);
+
+        for (int i = 0; i < num; i++) {
+            CCTNode child = (CCTNode) childNodes.get(start + i);
+            child.setNodeValue(result[i]);
+            child.setNodeStatus(CCTNode.NC_STATE);
+            if (!AbstractCheckerBuilder.twoPhaseEval) {
+                child.setLink(child.needsLink(result[i]) ? LinkSet.of(LinkHelper.packRow(param, rows[i])) : null);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 量词结点的子结点均为bfunc叶结点且与pattern快照一一对应时，按列计算[start, end]内所有子结点的值，
+     * 由结果位图直接得到结点的值，link由取值与结点相同的子结点组成
+     * @param quantNode
+     * @param param
+     * @param start
+     * @param end
+     * @return 不能按列计算时返回null
+     */
+    protected Result columnLeafEval(CCTNode quantNode, ParamStack param, int start, int end) {
+        if (!AbstractCheckerBuilder.columnEval || start > end || param.isEmpty()) {
+            return null;
+        }
+        List<TreeNode> childNodes = quantNode.getChildTreeNodes();
+        CCTNode first = (CCTNode) childNodes.get(start);
+        CCTNode last = (CCTNode) childNodes.get(end);
+        if (first.getNodeType() != CCTNode.BFUNC_NODE || quantNode.getContextSetName() == null) {
+            return null;
+        }
+        ContextColumns columns = patternMap.get(quantNode.getContextSetName()).getColumns();
+        if (columns.size() != childNodes.size() || columns.getRow(start) != first.getContextRow()
+                || columns.getRow(end) != last.getContextRow()) {
+            return null; //子结点与当前快照不一致
+        }
+
+        int num = end - start + 1;
+        int words = (num + 63) >>> 6;
+        long [] mask = EvalBuffers.current().mask(words);
+        if (!BFuncRegistry.get(first.getFuncType()).evaluate(columns, start, num, param.get(param.size() - 1), mask)) {
+            return null;
+        }
+
+        boolean universal = quantNode.getNodeType() == CCTNode.UNIVERSAL_NODE;
+        long tail = (num & 63) == 0 ? -1L : (1L << (num & 63)) - 1; //最后一个字的有效位
+        boolean value = universal;
+        for (int w = 0; w < words; w++) {
+            long valid = w == words - 1 ? tail : -1L;
+            if (universal ? (mask[w] & valid) != valid : mask[w] != 0) {
+                value = !universal;
+                break;
+            }
+        }
+
+        LinkSet link = AbstractCheckerBuilder.twoPhaseEval || !quantNode.needsLink(value) ? null : new LinkSet();
+        for (int k = 0; k < num; k++) {
+            CCTNode child = (CCTNode) childNodes.get(start + k);
+            boolean b = (mask[k >>> 6] & (1L << k)) != 0;
+            child.setNodeValue(b);
+            child.setNodeStatus(CCTNode.NC_STATE);
+            if (!AbstractCheckerBuilder.twoPhaseEval) {
+                child.setLink(child.needsLink(b) ? LinkSet.of(LinkHelper.packRow(param, child.getContextRow())) : null);
+            }
+            if (link != null && b == value) {
+                link.addAll(child.getLink());
+            }
+        }
+        quantNode.setNodeValue(value);
+        if (!AbstractCheckerBuilder.twoPhaseEval) {
+            quantNode.setLink(link);
+        }
+        return new Result(value, link);
+    }
+
+    /**
+     * 可借助pattern索引计算的bfunction叶结点：same（车牌号索引）或距离类bfunction（网格索引）
+     * @param node
+     * @return
+     */
+    private boolean isIndexed(STNode node) {
+        if (node.hasChildNodes()) {
+            return false;
+        }
+        if (node.getFuncType() == NodeType.SAME) {
+            return AbstractCheckerBuilder.plateIndex;
+        }
+        return AbstractCheckerBuilder.gridIndex && BFuncRegistry.get(node.getFuncType()).getDistanceThreshold() > 0;
+    }
+
+    /**
+     * 决定量词子结点取值的叶结点：子结点本身、and结点的操作数（优先same）或implies结点的前件，
+     * 该叶结点为假时子结点的取值固定（implies为真，其余为假）
+     * @param child
+     * @return 不存在时返回null
+     */
+    private STNode guardOf(STNode child) {
+        if (isIndexed(child)) {
+            return child;
+        }
+        STNode guard = null;
+        if (child.getNodeType() == STNode.AND_NODE) {
+            for (TreeNode n : child.getChildTreeNodes()) {
+                STNode operand = (STNode) n;
+                if (isIndexed(operand) && (guard == null || operand.getFuncType() == NodeType.SAME)) {
+                    guard = operand;
+                }
+            }
+        }
+        else if (child.getNodeType() == STNode.IMPLIES_NODE && isIndexed((STNode) child.getFirstChild())) {
+            guard = (STNode) child.getFirstChild();
+        }
+        return guard;
+    }
+
+    /**
+     * 求值借助pattern索引构造的量词结点：子结点只对应满足索引约束的context，
+     * 窗口中其余的context取固定值（implies为真，其余为假），不需要计算
+     * @param quantNode
+     * @param param
+     * @return
+     */
+    protected boolean indexedNodeEval(CCTNode quantNode, ParamStack param) {
+        boolean universal = quantNode.getNodeType() == CCTNode.UNIVERSAL_NODE;
+        List<TreeNode> childNodes = quantNode.getChildTreeNodes();
+        STNode stChild = (STNode) stMap.get(quantNode.getContextSetName()).getFirstChild();
+        boolean defaultValue = stChild.getNodeType() == STNode.IMPLIES_NODE;
+        int size = patternMap.get(quantNode.getContextSetName()).getColumns().size();
+
+        //全称量词存在取值为假的其余context、存在量词存在取值为真的其余context时，结果已确定
+        boolean decided = childNodes.size() < size && defaultValue != universal;
+        boolean value = decided ? defaultValue : universal;
+        if (!decided || !AbstractCheckerBuilder.twoPhaseEval) {
+            for (TreeNode node : childNodes) {
+                boolean b = evaluation((CCTNode) node, param);
+                if (!decided && b != universal) {
+                    value = b;
+                    if (AbstractCheckerBuilder.twoPhaseEval) {
+                        break; //短路，剩余子结点留待生成link时再计算
+                    }
+                }
+            }
+        }
+        if (AbstractCheckerBuilder.countingEval) {
+            quantNode.getDirtyChildren().clear(); //子结点不多，每次全部重算
+        }
+        quantNode.setNodeValue(value);
+        if (!AbstractCheckerBuilder.twoPhaseEval) {
+            quantNode.setLink(quantNode.needsLink(value) ? indexedLinkOf(quantNode, param) : null);
+        }
+        return value;
+    }
+
+    /**
+     * 借助pattern索引构造的量词结点的link：按窗口顺序一次遍历，有子结点的context取子结点的link，
+     * 其余context的link按语法树重新生成
+     * @param quantNode
+     * @param param
+     * @return
+     */
+    private Links indexedLinkOf(CCTNode quantNode, ParamStack param) {
+        boolean value = quantNode.getNodeValue();
+        List<TreeNode> childNodes = quantNode.getChildTreeNodes();
+        STNode stChild = (STNode) stMap.get(quantNode.getContextSetName()).getFirstChild();
+        boolean defaultValue = stChild.getNodeType() == STNode.IMPLIES_NODE;
+        boolean leaf = !stChild.hasChildNodes();
+        ContextColumns columns = patternMap.get(quantNode.getContextSetName()).getColumns();
+        if (columns.size() == 0) { //与CCT中没有子结点的量词结点一致
+            return LinkSet.of(LinkHelper.pack(param));
+        }
+
+        //全称量词取违反（为真时取全部）子结点，存在量词取满足（为假时取全部）子结点
+        boolean all = quantNode.getNodeType() == CCTNode.UNIVERSAL_NODE ? value : !value;
+        LinkSet link = new LinkSet();
+        int k = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            int row = columns.getRow(i);
+            CCTNode child = k < childNodes.size() ? (CCTNode) childNodes.get(k) : null;
+            if (child != null && child.getContextRow() == row) {
+                k++;
+                if (child.getNodeStatus() != CCTNode.NC_STATE) {
+                    evaluation(child, param);
+                }
+                if (!all && child.getNodeValue() != value) {
+                    continue;
+                }
+                if (leaf) {
+                    param.pushRow(row);
+                    link.add(LinkHelper.pack(param));
+                    param.pop();
+                }
+                else {
+                    link.addAll(AbstractCheckerBuilder.twoPhaseEval ? linkOf(child, param) : child.getLink());
+                }
+            }
+            else if (all || defaultValue == value) {
+                param.pushRow(row);
+                if (leaf) {
+                    link.add(LinkHelper.pack(param));
+                }
+                else {
+                    link.addAll(streamLinkOf(stChild, param, defaultValue));
+                }
+                param.pop();
+            }
+        }
+        return link;
+    }
+
+    protected  Result universalNodeEval(CCTNode universalNode, ParamStack param,int start, int end) {
         List<TreeNode> childNodes = universalNode.getChildTreeNodes();
 
-        StringBuilder satisfiedLink = new StringBuilder();
-        StringBuilder violatedLink = new StringBuilder();
+        LinkSet satisfiedLink = universalNode.needsLink(true) ? new LinkSet() : null;
+        LinkSet violatedLink = universalNode.needsLink(false) ? new LinkSet() : null;
 
+        Result columnResult = columnLeafEval(universalNode, param, start, end);
+        if (columnResult != null) {
+            return columnResult;
+        }
+        boolean batched = batchLeafEval(universalNode, param, start, end);
         boolean value = true;
         for (int i = start; i <= end; i++) {
             CCTNode child = (CCTNode)childNodes.get(i);
-            boolean b = evaluation(child, param);
+            boolean b = batched ? child.getNodeValue() : evaluation(child, param);
             value = value && b;
-            if (b) {
-                if(value) {
-                    satisfiedLink.append(child.getLink());
-                    satisfiedLink.append("#");
+            if (AbstractCheckerBuilder.twoPhaseEval) {
+                if (!value) {
+                    break; //短路，剩余子结点留待生成link时再计算
                 }
             }
-            else {
-                violatedLink.append(child.getLink());
-                violatedLink.append("#");
+            else if (b) {
+                if(value && satisfiedLink != null) {
+                    satisfiedLink.addAll(child.getLink());
+                }
+            }
+            else if (violatedLink != null) {
+                violatedLink.addAll(child.getLink());
             }
 
         }
         universalNode.setNodeValue(value); //更新结点值
-        String link;
-        if (!value) {
-            violatedLink.deleteCharAt(violatedLink.length() -1);
-            link = violatedLink.toString();
-        }
-        else {
-            satisfiedLink.deleteCharAt(satisfiedLink.length() - 1);
-            link = satisfiedLink.toString();
+        if (AbstractCheckerBuilder.twoPhaseEval) {
+            return new Result(value, null);
         }
+        LinkSet link = value ? satisfiedLink : violatedLink;
         universalNode.setLink(link);
         return new Result(value,link);
     }
 
-    protected Result existentialNodeEval(CCTNode existentialNode, List<Context> param, int start, int end) {
+    protected Result existentialNodeEval(CCTNode existentialNode, ParamStack param, int start, int end) {
         List<TreeNode> childNodes = existentialNode.getChildTreeNodes();
 
-        StringBuilder satisfiedLink = new StringBuilder();
-        StringBuilder violatedLink = new StringBuilder();
+        LinkSet satisfiedLink = existentialNode.needsLink(true) ? new LinkSet() : null;
+        LinkSet violatedLink = existentialNode.needsLink(false) ? new LinkSet() : null;
 
+        Result columnResult = columnLeafEval(existentialNode, param, start, end);
+        if (columnResult != null) {
+            return columnResult;
+        }
+        boolean batched = batchLeafEval(existentialNode, param, start, end);
         boolean value = false;
         for (int i = start; i <= end; i++) {
             CCTNode child = (CCTNode)childNodes.get(i);
-            boolean b = evaluation(child, param);
+            boolean b = batched ? child.getNodeValue() : evaluation(child, param);
             value = value || b;
-            if (b) {
-                satisfiedLink.append(child.getLink());
-                satisfiedLink.append("#");
+            if (AbstractCheckerBuilder.twoPhaseEval) {
+                if (value) {
+                    break; //短路，剩余子结点留待生成link时再计算
+                }
+            }
+            else if (b) {
+                if (satisfiedLink != null) {
+                    satisfiedLink.addAll(child.getLink());
+                }
             }
             else {
-                if(!value) {
-                    violatedLink.append(child.getLink());
-                    violatedLink.append("#");
+                if(!value && violatedLink != null) {
+                    violatedLink.addAll(child.getLink());
                 }
             }
         }
         existentialNode.setNodeValue(value);
-        String link;
-        if (value) {
-            satisfiedLink.deleteCharAt(satisfiedLink.length() - 1);
-            link = satisfiedLink.toString();
+        if (AbstractCheckerBuilder.twoPhaseEval) {
+            return new Result(value, null);
+        }
+        LinkSet link = value ? satisfiedLink : violatedLink;
+        existentialNode.setLink(link);
+        return new Result(value, link);
+    }
+
+
+    /**
+     * 基于计数的量词求值：全称量词维护取值为假的子结点数，存在量词维护取值为真的子结点数（子结点上记录是否计入），
+     * 结点求值过后只重算发生变化的子结点，值由计数是否为0决定
+     * @param quantNode
+     * @param param
+     * @return
+     */
+    protected boolean countingNodeEval(CCTNode quantNode, ParamStack param) {
+        boolean universal = quantNode.getNodeType() == CCTNode.UNIVERSAL_NODE;
+        Collection<? extends TreeNode> childNodes;
+        if (quantNode.getNodeStatus() == CCTNode.EC_STATE) { //首次求值，扫描全部子结点
+            childNodes = quantNode.getChildTreeNodes();
+        }
+        else {
+            childNodes = quantNode.getDirtyChildren();
+        }
+
+        for (TreeNode node : childNodes) {
+            CCTNode child = (CCTNode) node;
+            quantNode.markChild(child, evaluation(child, param) != universal);
+        }
+        quantNode.getDirtyChildren().clear();
+
+        boolean value = universal == (quantNode.getMarkedCount() == 0);
+        quantNode.setNodeValue(value);
+        return value;
+    }
+
+    /**
+     * 两阶段求值的第二阶段：根据已求得的结点值自顶向下生成link，只访问对link有贡献的子树，
+     * 第一阶段因短路而未求值的子结点在此补算
+     * @param cctRoot
+     * @param param
+     * @return
+     */
+    protected Links linkOf(CCTNode cctRoot, ParamStack param) {
+        if (cctRoot.isEvicted() && cctRoot.getNodeStatus() != CCTNode.NC_STATE) {
+            evaluation(cctRoot, param); //常驻结点数未达上限时展开
+        }
+        if (cctRoot.isEvicted()) { //由pattern流式生成link
+            param.pushRow(cctRoot.getContextRow());
+            Links link = streamLinkOf(stOf(cctRoot), param, cctRoot.getNodeValue());
+            param.pop();
+            return link;
+        }
+        if(cctRoot.getContextRow() != -1) {
+            param.pushRow(cctRoot.getContextRow());
+        }
 
+        Links link;
+        if (cctRoot.isIndexed()) {
+            link = indexedLinkOf(cctRoot, param);
+        }
+        else if(!cctRoot.hasChildNodes()) {
+            link = LinkSet.of(LinkHelper.pack(param));
         }
         else {
-            violatedLink.deleteCharAt(violatedLink.length() -1);
-            link = violatedLink.toString();
+            boolean value = cctRoot.getNodeValue();
+            List<TreeNode> childNodes = cctRoot.getChildTreeNodes();
+            if(cctRoot.getNodeType() == CCTNode.NOT_NODE) {
+                link = linkOf((CCTNode) childNodes.get(0), param);
+            }
+            else if(cctRoot.getNodeType() == CCTNode.AND_NODE) {
+                CCTNode leftChild = (CCTNode) childNodes.get(0);
+                CCTNode rightChild = (CCTNode) childNodes.get(1);
+                if(leftChild.getNodeValue() && !rightChild.getNodeValue()) {
+                    link = linkOf(rightChild, param);
+                }
+                else if(!leftChild.getNodeValue() && rightChild.getNodeValue()) {
+                    link = linkOf(leftChild, param);
+                }
+                else {
+                    link = LinkHelper.linkCartesian(linkOf(leftChild, param), linkOf(rightChild, param));
+                }
+            }
+            else if(cctRoot.getNodeType() == CCTNode.IMPLIES_NODE) {
+                if(value) {
+                    link = LinkHelper.linkCartesian(linkOf((CCTNode) childNodes.get(0), param), linkOf((CCTNode) childNodes.get(1), param));
+                }
+                else {
+                    link = linkOf((CCTNode) childNodes.get(1), param);
+                }
+            }
+            else {
+                //全称量词取违反（为真时取全部）子结点，存在量词取满足（为假时取全部）子结点
+                boolean all = cctRoot.getNodeType() == CCTNode.UNIVERSAL_NODE ? value : !value;
+                LinkSet linkSet = new LinkSet();
+                boolean counted = !all && AbstractCheckerBuilder.countingEval; //计数求值时只需访问关键子结点，按窗口顺序
+                for (TreeNode node : childNodes) {
+                    CCTNode child = (CCTNode) node;
+                    if (counted && !child.isMarked()) {
+                        continue;
+                    }
+                    if (child.getNodeStatus() != CCTNode.NC_STATE) {
+                        evaluation(child, param);
+                    }
+                    if (all || child.getNodeValue() == value) {
+                        linkSet.addAll(linkOf(child, param));
+                    }
+                }
+                link = linkSet;
+            }
+        }
+
+        if (cctRoot.getContextRow() != -1) {
+            param.pop();
+        }
+        return link;
+    }
+
+    /**
+     * 不构建CCT的求值（cct=stream）：按语法树嵌套遍历各pattern的快照，量词绑定的context以行号压入ParamStack，
+     * 占用的内存只与rule的深度有关。量词结点短路求值，link在根结点为假时由streamLinkOf生成。
+     * 索引量词结点中没有子结点的context也由此生成link
+     * @param stNode
+     * @param param
+     * @return
+     */
+    protected boolean streamEval(STNode stNode, ParamStack param) {
+        switch (stNode.getNodeType()) {
+            case STNode.UNIVERSAL_NODE:
+            case STNode.EXISTENTIAL_NODE: {
+                boolean universal = stNode.getNodeType() == STNode.UNIVERSAL_NODE;
+                STNode child = (STNode) stNode.getFirstChild();
+                ContextColumns columns = patternMap.get(stNode.getContextSetName()).getColumns();
+                for (int i = 0; i < columns.size(); i++) {
+                    param.pushRow(columns.getRow(i));
+                    boolean b = streamEval(child, param);
+                    param.pop();
+                    if (b != universal) {
+                        return b;
+                    }
+                }
+                return universal;
+            }
+            case STNode.AND_NODE: {
+                return streamEval((STNode) stNode.getFirstChild(), param) && streamEval((STNode) stNode.getLastChild(), param);
+            }
+            case STNode.IMPLIES_NODE: {
+                return !streamEval((STNode) stNode.getFirstChild(), param) || streamEval((STNode) stNode.getLastChild(), param);
+            }
+            case STNode.NOT_NODE: {
+                return !streamEval((STNode) stNode.getFirstChild(), param);
+            }
+            default: {
+                int size = param.size();
+                assert size >= 1:"[DEBUG] Param error";
+                return BFuncHelper.bfun(stNode.getFuncType(), param.getRow(size - 1), param.getRow(size >= 2 ? size - 2 : size - 1));
+            }
         }
-        existentialNode.setLink(link);
-        return new Result(value, link);
     }
 
+    /**
+     * 不构建CCT时生成link，规则与Checker.linkOf一致，子结点的值在此重新求得，每个结点至多多求值一次
+     * @param stNode
+     * @param param
+     * @param value 本结点的值
+     * @return
+     */
+    protected Links streamLinkOf(STNode stNode, ParamStack param, boolean value) {
+        switch (stNode.getNodeType()) {
+            case STNode.UNIVERSAL_NODE:
+            case STNode.EXISTENTIAL_NODE: {
+                ContextColumns columns = patternMap.get(stNode.getContextSetName()).getColumns();
+                if (columns.size() == 0) { //与CCT中没有子结点的量词结点一致
+                    return LinkSet.of(LinkHelper.pack(param));
+                }
+                //全称量词取违反（为真时取全部）子结点，存在量词取满足（为假时取全部）子结点
+                boolean all = stNode.getNodeType() == STNode.UNIVERSAL_NODE ? value : !value;
+                STNode child = (STNode) stNode.getFirstChild();
+                boolean leaf = !child.hasChildNodes();
+                LinkSet link = new LinkSet();
+                for (int i = 0; i < columns.size(); i++) {
+                    param.pushRow(columns.getRow(i));
+                    if (leaf) {
+                        if (all || streamEval(child, param) == value) {
+                            link.add(LinkHelper.pack(param));
+                        }
+                    }
+                    else {
+                        boolean b = streamEval(child, param);
+                        if (all || b == value) {
+                            link.addAll(streamLinkOf(child, param, b));
+                        }
+                    }
+                    param.pop();
+                }
+                return link;
+            }
+            case STNode.AND_NODE: {
+                STNode leftChild = (STNode) stNode.getFirstChild();
+                STNode rightChild = (STNode) stNode.getLastChild();
+                boolean leftValue = streamEval(leftChild, param);
+                boolean rightValue = streamEval(rightChild, param);
+                if (leftValue && !rightValue) {
+                    return streamLinkOf(rightChild, param, false);
+                }
+                else if (!leftValue && rightValue) {
+                    return streamLinkOf(leftChild, param, false);
+                }
+                return LinkHelper.linkCartesian(streamLinkOf(leftChild, param, leftValue), streamLinkOf(rightChild, param, rightValue));
+            }
+            case STNode.IMPLIES_NODE: {
+                STNode leftChild = (STNode) stNode.getFirstChild();
+                STNode rightChild = (STNode) stNode.getLastChild();
+                if (value) {
+                    return LinkHelper.linkCartesian(streamLinkOf(leftChild, param, streamEval(leftChild, param)),
+                            streamLinkOf(rightChild, param, streamEval(rightChild, param)));
+                }
+                return streamLinkOf(rightChild, param, false); //前件为真、后件为假
+            }
+            case STNode.NOT_NODE: {
+                return streamLinkOf((STNode) stNode.getFirstChild(), param, !value);
+            }
+            default: {
+                return LinkSet.of(LinkHelper.pack(param));
+            }
+        }
+    }
+
+    /**
+     * 根结点的link，两阶段求值时在此生成
+     * @return
+     */
+    protected Links getRootLink() {
+        if (cctArena != null) {
+            return cctArena.getLink();
+        }
+        else if (AbstractCheckerBuilder.twoPhaseEval) {
+            return linkOf(cctRoot, ParamStack.current());
+        }
+        return cctRoot.getLink();
+    }
 
     public void printSyntaxTree() {
         BFSOrder(stRoot);
@@ -682,7 +1406,186 @@ public abstract class Checker {
         return stMap;
     }
 
-    private int calcTreeSize(STNode root) {
+    /**
+     * 极性分析：自顶向下计算各结点在哪些取值下的link可能出现在根结点的violated link中（规则与linkOf一致），
+     * and与量词结点的子结点与本结点相同，not结点取反，implies为真时两个子结点均需要，为假时只需要后件为假时的link
+     * @param root
+     * @param mask 第0位为取值为假时，第1位为取值为真时
+     * @param masks
+     */
+    private void calcLinkMask(STNode root, int mask, Map<STNode, Integer> masks) {
+        masks.put(root, mask);
+        int type = root.getNodeType();
+        if (type == STNode.NOT_NODE) {
+            calcLinkMask((STNode) root.getFirstChild(), ((mask & 1) << 1) | ((mask & 2) >> 1), masks);
+        }
+        else if (type == STNode.IMPLIES_NODE) {
+            int both = (mask & 2) != 0 ? 3 : 0;
+            calcLinkMask((STNode) root.getFirstChild(), both, masks);
+            calcLinkMask((STNode) root.getLastChild(), both | (mask & 1), masks);
+        }
+        else {
+            for (TreeNode child : root.getChildTreeNodes()) {
+                calcLinkMask((STNode) child, mask, masks);
+            }
+        }
+    }
+
+    private boolean containsQuantifier(STNode root) {
+        if (root.getNodeType() == STNode.UNIVERSAL_NODE || root.getNodeType() == STNode.EXISTENTIAL_NODE) {
+            return true;
+        }
+        for (TreeNode child : root.getChildTreeNodes()) {
+            if (containsQuantifier((STNode) child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void collectPatterns(STNode root, Set<String> patterns) {
+        if (root.getNodeType() == STNode.UNIVERSAL_NODE || root.getNodeType() == STNode.EXISTENTIAL_NODE) {
+            patterns.add(root.getContextSetName());
+        }
+        for (TreeNode child : root.getChildTreeNodes()) {
+            collectPatterns((STNode) child, patterns);
+        }
+    }
+
+    /**
+     * 已换出的子树根对应的语法树结点
+     * @param unit
+     * @return
+     */
+    private STNode stOf(CCTNode unit) {
+        return (STNode) stMap.get(((CCTNode) unit.getParentTreeNode()).getContextSetName()).getFirstChild();
+    }
+
+    /**
+     * 子树中涉及的pattern发生变化时，已换出的子树需要重新求值
+     * @param patternId
+     */
+    private void markEvicted(String patternId) {
+        if (residentUnits == null) {
+            return;
+        }
+        for (CCTNode unit : evictedMap.get(patternId)) {
+            unit.setNodeStatus(CCTNode.EC_STATE);
+            updateNodesToRoot(unit);
+        }
+    }
+
+    /**
+     * 子树根被删除或换出时，将其移出LRU和换出记录
+     * @param stRoot
+     * @param cctRoot
+     */
+    private void forgetUnit(STNode stRoot, CCTNode cctRoot) {
+        if (residentUnits.remove(cctRoot) == null && cctRoot.isEvicted()) {
+            for (String patternId : unitPatterns.get(stRoot)) {
+                evictedMap.get(patternId).remove(cctRoot);
+            }
+            cctRoot.setEvicted(false);
+        }
+    }
+
+    /**
+     * 不展开已换出的子树，由pattern的当前窗口流式求值，link也在此流式生成
+     * @param stUnit
+     * @param unit
+     * @param param
+     * @return
+     */
+    private boolean unitEval(STNode stUnit, CCTNode unit, ParamStack param) {
+        param.pushRow(unit.getContextRow());
+        boolean value = streamEval(stUnit, param);
+        unit.setNodeValue(value);
+        if (!AbstractCheckerBuilder.twoPhaseEval) {
+            unit.setLink(unit.needsLink(value) ? streamLinkOf(stUnit, param, value) : null);
+        }
+        param.pop();
+        unit.setNodeStatus(CCTNode.NC_STATE);
+        return value;
+    }
+
+    /**
+     * 由pattern的当前窗口重新展开已换出的子树，展开后需全量求值
+     * @param stUnit
+     * @param unit
+     */
+    private void materialize(STNode stUnit, CCTNode unit) {
+        forgetUnit(stUnit, unit);
+        buildCCT(stUnit, unit);
+        unit.setNodeStatus(CCTNode.EC_STATE);
+        residentUnits.put(unit, stUnit);
+    }
+
+    /**
+     * 换出已展开的子树，只保留子树根的值和link
+     * @param stUnit
+     * @param unit
+     */
+    private void evict(STNode stUnit, CCTNode unit) {
+        removeCriticalNode(stUnit, unit);
+        unit.getChildTreeNodes().clear();
+        residentNodes++; //子树根仍然保留
+        stub(stUnit, unit);
+    }
+
+    /**
+     * 将子树根记为未展开，只保留本结点
+     * @param stUnit
+     * @param unit
+     */
+    private void stub(STNode stUnit, CCTNode unit) {
+        unit.setEvicted(true);
+        if (linkMasks != null) {
+            unit.setLinkMask(linkMasks.get(stUnit));
+        }
+        for (String patternId : unitPatterns.get(stUnit)) {
+            evictedMap.get(patternId).add(unit);
+        }
+    }
+
+    /**
+     * 常驻的CCT结点数超过cctBudget时，按LRU顺序换出子树，在一次检测（包括生成link）结束后调用
+     */
+    protected void evictToBudget() {
+        if (residentUnits == null) {
+            return;
+        }
+        long budget = AbstractCheckerBuilder.cctBudget;
+        while (residentNodes > budget && !residentUnits.isEmpty()) {
+            Map.Entry<CCTNode, STNode> eldest = residentUnits.entrySet().iterator().next();
+            evict(eldest.getValue(), eldest.getKey()); //内层子树随外层子树一并移出LRU
+        }
+    }
+
+    /**
+     * 展开已换出的子树时新增的CCT结点数（上限），其中含有量词的子树只计子树根
+     * @param root
+     * @return
+     */
+    private long unitSize(STNode root) {
+        int type = root.getNodeType();
+        if(type == STNode.UNIVERSAL_NODE || type == STNode.EXISTENTIAL_NODE) {
+            STNode child = (STNode) root.getFirstChild();
+            int num = patternMap.get(root.getContextSetName()).getContextList().size();
+            return 1 + num * (unitPatterns.containsKey(child) ? 1 : unitSize(child));
+        }
+        long size = 1;
+        for (TreeNode child : root.getChildTreeNodes()) {
+            size += unitSize((STNode) child);
+        }
+        return size;
+    }
+
+    /**
+     * 估计语法树结点对应的CCT子树大小
+     * @param root
+     * @return
+     */
+    protected long calcTreeSize(STNode root) {
         assert root != null:"root is null.";
         int type = root.getNodeType();
         if(type == STNode.UNIVERSAL_NODE || type == STNode.EXISTENTIAL_NODE) {
@@ -724,12 +1627,12 @@ public abstract class Checker {
             if (n.getNodeType() == NodeType.BFUNC_NODE) {
 
                 if (p == null) {
-                    Boolean b1 = BFuncHelper.bfun(n.getNodeName(), c, null);
+                    Boolean b1 = BFuncHelper.bfun(n.getFuncType(), c, null);
                     result.add(b1);
                 }
                 else {
                     for (Context c1 : patternMap.get(p).getContextList()) {
-                        Boolean b1 = BFuncHelper.bfun(n.getNodeName(), c, c1);
+                        Boolean b1 = BFuncHelper.bfun(n.getFuncType(), c, c1);
                         result.add(b1);
                     }
                 }
@@ -764,8 +1667,8 @@ public abstract class Checker {
             boolean flag = false;
             if (n.getNodeType() == NodeType.BFUNC_NODE) {
                 if (p == null) {
-                    boolean b1 = BFuncHelper.bfun(n.getNodeName(), c1, null);
-                    boolean b2 = BFuncHelper.bfun(n.getNodeName(), c2, null);
+                    boolean b1 = BFuncHelper.bfun(n.getFuncType(), c1, null);
+                    boolean b2 = BFuncHelper.bfun(n.getFuncType(), c2, null);
 
                     if (b1 != b2) {
                         result = false;
@@ -774,8 +1677,8 @@ public abstract class Checker {
                 }
                 else {
                     for (Context c : patternMap.get(p).getContextList()) {
-                        boolean b1 = BFuncHelper.bfun(n.getNodeName(), c1, c);
-                        boolean b2 = BFuncHelper.bfun(n.getNodeName(), c2, c);
+                        boolean b1 = BFuncHelper.bfun(n.getFuncType(), c1, c);
+                        boolean b2 = BFuncHelper.bfun(n.getFuncType(), c2, c);
 
                         if(b1 != b2) {
                             result = false;
@@ -799,21 +1702,110 @@ public abstract class Checker {
     }
 
     public boolean inCriticalSet(String id) {
-        return criticalSet.contains("ctx_" + id);
+        return criticalSet.contains(Integer.parseInt(id));
     }
 
-    protected void addCriticalSet(String link) {
-        String [] contexts = link.split(" ");
-        criticalSet.addAll(Arrays.asList(contexts));
-
+    protected void addCriticalSet(long link) {
+        for (int i = 0; i < LinkHelper.length(link); i++) {
+            criticalSet.add(LinkHelper.getId(link, i));
+        }
     }
 
     protected void clearCriticalSet() {
         criticalSet.clear();
     }
 
+    /**
+     * 将根结点的violated link加入critical set，新出现的link输出到日志，
+     * 配置了linkLimit时每次检测至多输出linkLimit条link，按linkPolicy选取：
+     * first为展开顺序的前linkLimit条，newest为所含context最新（id最大）的linkLimit条，
+     * distinct为每个最外层context的第一条link
+     * @param links
+     */
+    protected void addViolatedLinks(Links links) {
+        long size = links.size();
+        violatedCount += size;
+        if (size > this.maxLinkSize) {
+            this.maxLinkSize = size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+        }
+
+        int limit = AbstractCheckerBuilder.linkLimit;
+        int policy = AbstractCheckerBuilder.linkPolicy;
+        if (policy == AbstractCheckerBuilder.LINK_NEWEST && limit >= 0 && size > limit) {
+            for (long link : newestLinks(links, limit)) {
+                emitLink(link);
+            }
+            return;
+        }
+
+        Set<Integer> outerIds = policy == AbstractCheckerBuilder.LINK_DISTINCT ? new HashSet<>() : null;
+        int num = 0;
+        PrimitiveIterator.OfLong it = links.iterator();
+        while (it.hasNext() && (limit < 0 || num < limit)) {
+            long link = it.nextLong();
+            if (outerIds != null && !outerIds.add(LinkHelper.getId(link, 0))) {
+                continue;
+            }
+            num++;
+            emitLink(link);
+        }
+    }
+
+    private void emitLink(long link) {
+        addCriticalSet(link);
+
+        if (addIncLink(link)) {
+            logBuffer.append(getName()).append(' ').append(LinkHelper.toString(link)).append('\n');
+        }
+    }
+
+    /**
+     * 所含context最新的limit条link：以link中最大的context id比较，相同时比较link本身，结果与展开顺序无关
+     * @param links
+     * @param limit
+     * @return 由新到旧排列
+     */
+    private long [] newestLinks(Links links, int limit) {
+        Comparator<Long> order = Comparator.comparingInt(Checker::newestId).thenComparingLong(Long::longValue);
+        PriorityQueue<Long> heap = new PriorityQueue<>(limit + 1, order); //保留最新的limit条，堆顶为其中最旧的
+        PrimitiveIterator.OfLong it = links.iterator();
+        while (it.hasNext()) {
+            long link = it.nextLong();
+            if (heap.size() < limit) {
+                heap.add(link);
+            }
+            else if (limit > 0 && order.compare(link, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(link);
+            }
+        }
+        long [] result = new long[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = heap.poll();
+        }
+        return result;
+    }
+
+    private static int newestId(long link) {
+        int id = -1;
+        for (int i = 0; i < LinkHelper.length(link); i++) {
+            id = Math.max(id, LinkHelper.getId(link, i));
+        }
+        return id;
+    }
+
+    /**
+     * 将本次检测的日志写入日志文件
+     */
+    public void flushLog() {
+        if (logBuffer.length() > 0) {
+            LogFileHelper.getLogger().write(logBuffer);
+            logBuffer.setLength(0);
+        }
+    }
+
     public int getWorkload() {
-        return calcTreeSize(this.stRoot);
+        return (int) Math.min(calcTreeSize(this.stRoot), Integer.MAX_VALUE);
     }
 
 
@@ -821,4 +1813,8 @@ public abstract class Checker {
         return maxLinkSize;
     }
 
+    public long getViolatedCount() {
+        return violatedCount;
+    }
+
 }
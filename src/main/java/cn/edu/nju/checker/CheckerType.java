@@ -9,4 +9,5 @@ public interface CheckerType {
     public static final int CON_TYPE = 2;
     public static final int GAIN_TYPE = 3;
     public static final int CONPCC_TYPE = 4;
+    public static final int CGAIN_TYPE = 5;
 }
@@ -1,9 +1,10 @@
 package cn.edu.nju.checker;
 
-import cn.edu.nju.context.Context;
 import cn.edu.nju.node.CCTNode;
 import cn.edu.nju.node.STNode;
 import cn.edu.nju.pattern.Pattern;
+import cn.edu.nju.util.Links;
+import cn.edu.nju.util.ParamStack;
 
 import java.util.*;
 import java.util.concurrent.*;
@@ -13,95 +14,47 @@ import java.util.concurrent.*;
  */
 
 public class ConChecker extends EccChecker {
-    private int taskNum;
+    private static final long MIN_TASK_COST = 1024; //子树估计大小低于该值时不再拆分
 
     private Checker ecc;
 
-    private ExecutorService checkExecutorService;
+    private ForkJoinEccChecker forkJoinEcc;
 
-    public ConChecker(String name, STNode stRoot, Map<String, Pattern> patternMap, Map<String, STNode> stMap, int taskNum, ExecutorService checkExecutorService) {
+    private ForkJoinPool checkExecutorService;
+
+    public ConChecker(String name, STNode stRoot, Map<String, Pattern> patternMap, Map<String, STNode> stMap, ForkJoinPool checkExecutorService) {
         super(name, stRoot, patternMap, stMap);
-        this.taskNum = taskNum;
-        this.ecc = new EccChecker();
-        this.checkExecutorService = checkExecutorService;//Executors.newFixedThreadPool(taskNum);
+        this.ecc = new EccChecker(patternMap, stMap);
+        this.forkJoinEcc = new ForkJoinEccChecker(patternMap, stMap);
+        this.checkExecutorService = checkExecutorService;
     }
 
-    public ConChecker(Checker checker, int taskNum, ExecutorService checkExecutorService) {
+    public ConChecker(Checker checker, ForkJoinPool checkExecutorService) {
         super(checker);
-        this.taskNum = taskNum;
-        this.ecc = new EccChecker();
+        this.ecc = new EccChecker(patternMap, stMap);
+        this.forkJoinEcc = new ForkJoinEccChecker(patternMap, stMap);
         this.checkExecutorService = checkExecutorService;
     }
 
     @Override
-    protected boolean evaluation(CCTNode cctRoot, List<Context> param) {
-
-        int workload = cctRoot.getChildTreeNodes().size();
-        int workerNum = workload;
-        if ( workerNum >= taskNum) {
-            workerNum = taskNum;
-        }
-
-        List<Future<Result>> subResultList = new ArrayList<>();
-
-        for(int i = 0; i < workerNum; i++) {
-            List<Context> p = new ArrayList<>();
-            p.addAll(param);
-            Future<Result> subResult = checkExecutorService.submit(new CheckTask(cctRoot, p, ecc,i * workload / workerNum, (i + 1) * workload / workerNum - 1));
-            subResultList.add(subResult);
-        }
-
-        boolean andValue = true;
-        boolean orValue = false;
-        StringBuilder satisfiedLink = new StringBuilder();
-        StringBuilder violatedLink = new StringBuilder();
-        try {
-            for (Future<Result> subResult : subResultList) {
-                Result tmpResult = subResult.get();
-                boolean tmp = tmpResult.getValue();
-                andValue = andValue && tmp;
-                orValue = orValue || tmp;
-                if (tmp) {
-                    satisfiedLink.append(tmpResult.getLink());
-                    satisfiedLink.append("#");
-                } else {
-                    violatedLink.append(tmpResult.getLink());
-                    violatedLink.append("#");
-                }
+    protected boolean evaluation(CCTNode cctRoot, ParamStack param) {
+        //每个线程约分到8个任务，便于工作窃取
+        forkJoinEcc.setThreshold(Math.max(calcTreeSize(stRoot) / (checkExecutorService.getParallelism() * 8L), MIN_TASK_COST));
+        int [] prefix = param.toRows();
+        return checkExecutorService.invoke(ForkJoinTask.adapt(() -> {
+            ParamStack p = ParamStack.current();
+            int savedBase = p.enter(prefix);
+            try {
+                return forkJoinEcc.evaluation(cctRoot, p);
+            } finally {
+                p.exit(savedBase);
             }
+        }));
+    }
 
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } catch (ExecutionException e) {
-            e.printStackTrace();
-        }
-
-
-        boolean value;
-        if (cctRoot.getNodeType() == CCTNode.UNIVERSAL_NODE) {
-            value = andValue;
-
-        } else {
-            value = orValue;
-
-        }
-
-        cctRoot.setNodeValue(value);
-
-        if(value) {
-            int len = satisfiedLink.length();
-            if(len > 0) {
-                satisfiedLink.deleteCharAt(len - 1);
-            }
-            cctRoot.setLink(satisfiedLink.toString());
-        } else {
-            int len = violatedLink.length();
-            if(len > 0) {
-                violatedLink.deleteCharAt(len - 1);
-            }
-            cctRoot.setLink(violatedLink.toString());
-        }
-        return value;
+    @Override
+    protected Links linkOf(CCTNode cctRoot, ParamStack param) {
+        return ecc.linkOf(cctRoot, param); //子结点按ECC补算
     }
 
     @Override
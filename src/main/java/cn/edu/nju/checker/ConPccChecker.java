@@ -1,129 +1,110 @@
 package cn.edu.nju.checker;
 
-import cn.edu.nju.context.Context;
 import cn.edu.nju.node.CCTNode;
-import cn.edu.nju.node.NodeStatus;
-import cn.edu.nju.node.NodeType;
 import cn.edu.nju.node.STNode;
+import cn.edu.nju.node.TreeNode;
 import cn.edu.nju.pattern.Pattern;
+import cn.edu.nju.util.Links;
+import cn.edu.nju.util.ParamStack;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class ConPccChecker extends PccChecker {
-    private Checker pcc;
-
-    private int addNum;
+    private static final long MIN_TASK_COST = 1024; //待重算子树的估计大小低于该值时顺序求值
 
-    private int taskNum;
+    private Checker pcc;
 
-    private ExecutorService checkExecutorService;
+    private ForkJoinPool checkExecutorService;
 
 
-    public ConPccChecker(String name, STNode stRoot, Map<String, Pattern> patternMap, Map<String, STNode> stMap, int taskNum, ExecutorService checkExecutorService) {
+    public ConPccChecker(String name, STNode stRoot, Map<String, Pattern> patternMap, Map<String, STNode> stMap, ForkJoinPool checkExecutorService) {
         super(name, stRoot, patternMap, stMap);
-        this.pcc = new PccChecker();
-        this.addNum = 0;
-        this.taskNum = taskNum;
+        this.pcc = new PccChecker(patternMap, stMap);
         this.checkExecutorService = checkExecutorService;
     }
 
-    public ConPccChecker(Checker checker, int taskNum, ExecutorService checkExecutorService) {
+    public ConPccChecker(Checker checker, ForkJoinPool checkExecutorService) {
         super(checker);
-        this.pcc = new PccChecker();
-        this.addNum = 0;
-        this.taskNum = taskNum;
+        this.pcc = new PccChecker(patternMap, stMap);
         this.checkExecutorService = checkExecutorService;
     }
 
+    /**
+     * 只并发重算根结点下状态为PC/EC的子树，NC子树直接使用已有的值和link，
+     * 最后由PCC按顺序合并所有子结点的结果
+     * @param cctRoot
+     * @param param
+     * @return
+     */
     @Override
-    public boolean add(String patternId, Context context) {
-        if (patternId.equals(stRoot.getContextSetName())) {
-            addNum++;
+    protected boolean evaluation(CCTNode cctRoot, ParamStack param) {
+        if (cctRoot.getNodeStatus() != CCTNode.NC_STATE
+                && (cctRoot.getNodeType() == CCTNode.UNIVERSAL_NODE || cctRoot.getNodeType() == CCTNode.EXISTENTIAL_NODE)
+                && cctRoot.hasChildNodes() && ((CCTNode) cctRoot.getFirstChild()).getNodeType() != CCTNode.BFUNC_NODE) {
+            List<CCTNode> dirtyList = new ArrayList<>();
+            for (TreeNode node : cctRoot.getChildTreeNodes()) {
+                if (((CCTNode) node).getNodeStatus() != CCTNode.NC_STATE) {
+                    dirtyList.add((CCTNode) node);
+                }
+            }
+            if (dirtyList.size() > 1
+                    && dirtyList.size() * calcTreeSize((STNode) stRoot.getFirstChild()) >= MIN_TASK_COST) {
+                //每个线程约分到8个任务，便于工作窃取
+                int granularity = Math.max(1, dirtyList.size() / (checkExecutorService.getParallelism() * 8));
+                checkExecutorService.invoke(new DirtyTask(dirtyList, 0, dirtyList.size() - 1, param.toRows(), granularity));
+            }
         }
-        return super.add(patternId, context);
+        return pcc.evaluation(cctRoot, param); //子结点均已求值，只需合并
     }
 
-    @Override
-    protected boolean evaluation(CCTNode cctRoot, List<Context> param) {
-        int size = cctRoot.getChildTreeNodes().size();
-        if (addNum == 0 || stMap.size() < 2 || size <= 1) { // 无新增分支，直接增量检测
-            addNum = 0;
-            return pcc.evaluation(cctRoot, param);
-        }
+    private class DirtyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-        int workload = size;
+        private final List<CCTNode> dirtyList;
 
-        int workerNum = workload;
+        private final int start;
 
-        if ( workerNum >= taskNum) {
-            workerNum = taskNum;
+        private final int end;
 
-        }
+        private final int [] prefix; //外层context，由执行任务的线程压入自己的栈
 
-        List<Future<Result>> subResultList = new ArrayList<>();
+        private final int granularity;
 
-        for(int i = 0; i < workerNum; i++) {
-            List<Context> p = new ArrayList<>();
-            p.addAll(param);
-            Future<Result> subResult = checkExecutorService.submit(new CheckTask(cctRoot, p, new PccChecker(),i * workload / workerNum, (i + 1) * workload / workerNum - 1));
-            subResultList.add(subResult);
+        DirtyTask(List<CCTNode> dirtyList, int start, int end, int [] prefix, int granularity) {
+            this.dirtyList = dirtyList;
+            this.start = start;
+            this.end = end;
+            this.prefix = prefix;
+            this.granularity = granularity;
         }
 
-        boolean andValue = true;
-        boolean orValue = false;
-        StringBuilder satisfiedLink = new StringBuilder();
-        StringBuilder violatedLink = new StringBuilder();
-        try {
-            for (Future<Result> subResult : subResultList) {
-                Result tmpResult = subResult.get();
-                boolean tmp = tmpResult.getValue();
-                andValue = andValue && tmp;
-                orValue = orValue || tmp;
-                if (tmp) {
-                    satisfiedLink.append(tmpResult.getLink());
-                    satisfiedLink.append("#");
-                } else {
-                    violatedLink.append(tmpResult.getLink());
-                    violatedLink.append("#");
+        @Override
+        protected void compute() {
+            if (end - start + 1 <= granularity) {
+                ParamStack param = ParamStack.current();
+                int savedBase = param.enter(prefix);
+                try {
+                    for (int i = start; i <= end; i++) {
+                        pcc.evaluation(dirtyList.get(i), param);
+                    }
+                } finally {
+                    param.exit(savedBase);
                 }
+                return;
             }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } catch (ExecutionException e) {
-            e.printStackTrace();
+            int mid = (start + end) >>> 1;
+            invokeAll(new DirtyTask(dirtyList, start, mid, prefix, granularity),
+                    new DirtyTask(dirtyList, mid + 1, end, prefix, granularity));
         }
+    }
 
-        boolean value;
-        if (cctRoot.getNodeType() == CCTNode.UNIVERSAL_NODE) {
-            value = andValue;
-        } else {
-            value = orValue;
-
-        }
-        cctRoot.setNodeValue(value);
-        if(value) {
-            int len = satisfiedLink.length();
-            if(len > 0) {
-                satisfiedLink.deleteCharAt(len - 1);
-            }
-            cctRoot.setLink(satisfiedLink.toString());
-        } else {
-            int len = violatedLink.length();
-            if(len > 0) {
-                violatedLink.deleteCharAt(len - 1);
-            }
-            cctRoot.setLink(violatedLink.toString());
-        }
-
-        cctRoot.setNodeStatus(NodeStatus.NC_STATE);
-
-        addNum = 0; //新增分支数清零
-        return cctRoot.getNodeValue();
+    @Override
+    protected Links linkOf(CCTNode cctRoot, ParamStack param) {
+        return pcc.linkOf(cctRoot, param); //子结点按PCC补算
     }
 
     @Override
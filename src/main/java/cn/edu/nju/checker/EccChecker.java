@@ -1,15 +1,12 @@
 package cn.edu.nju.checker;
 
-import cn.edu.nju.context.Context;
+import cn.edu.nju.builder.AbstractCheckerBuilder;
 import cn.edu.nju.node.CCTNode;
 import cn.edu.nju.node.STNode;
 import cn.edu.nju.pattern.Pattern;
-import cn.edu.nju.util.LinkHelper;
-import cn.edu.nju.util.LogFileHelper;
+import cn.edu.nju.util.ParamStack;
 
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Created by njucjc on 2017/10/7.
@@ -25,6 +22,10 @@ public class EccChecker extends Checker{
     }
 
     protected EccChecker() {}
+
+    protected EccChecker(Map<String, Pattern> patternMap, Map<String, STNode> stMap) {
+        super(patternMap, stMap);
+    }
     /**
      *
      * @return violated link
@@ -33,34 +34,33 @@ public class EccChecker extends Checker{
     public boolean doCheck() {
 
         checkTimes++;
-        clearCCTMap();
-        removeCriticalNode(stRoot, cctRoot);
-        cctRoot = new CCTNode(stRoot.getNodeName(), stRoot.getNodeType());
-        buildCCT(stRoot, cctRoot);
-        List<Context> param = new CopyOnWriteArrayList<>();
-        evaluation(cctRoot, param);
+        boolean rootValue;
+        if (cctArena != null) {
+            rootValue = cctArena.evaluation(false);
+        }
+        else if (AbstractCheckerBuilder.streamEval) {
+            rootValue = streamEval(stRoot, ParamStack.current());
+        }
+        else {
+            clearCCTMap();
+            removeCriticalNode(stRoot, cctRoot);
+            cctRoot = new CCTNode(stRoot.getNodeName(), stRoot.getNodeType());
+            buildCCT(stRoot, cctRoot);
+            ParamStack param = ParamStack.current();
+            evaluation(cctRoot, param);
+            rootValue = cctRoot.getNodeValue();
+        }
 
         boolean value = true;
 
         clearCriticalSet();
 
-        if (!cctRoot.getNodeValue()) {
-            String [] links = LinkHelper.splitLinks(cctRoot.getLink());
-            for (String link : links) {
-
-                addCriticalSet(link);
-
-                if (addIncLink(link)) {
-                    LogFileHelper.getLogger().info(getName() + " " + link, false);
-                }
-            }
-
-            this.maxLinkSize = this.maxLinkSize > links.length ? this.maxLinkSize : links.length;
+        if (!rootValue) {
+            addViolatedLinks(AbstractCheckerBuilder.streamEval ? streamLinkOf(stRoot, ParamStack.current(), false) : getRootLink());
             value = false;
         }
 
         return value;
 
     }
-
 }
@@ -0,0 +1,56 @@
+package cn.edu.nju.checker;
+
+import java.util.Arrays;
+
+/**
+ * 每个线程复用的叶结点批量求值缓冲区（子结点的行号、结果、按列求值的位图）。
+ * 只在子结点均为bfunc叶结点时使用，使用期间不会重入
+ */
+final class EvalBuffers {
+    private static final ThreadLocal<EvalBuffers> buffers = ThreadLocal.withInitial(EvalBuffers::new);
+
+    private int [] rows = new int[64];
+
+    private boolean [] result = new boolean[64];
+
+    private long [] mask = new long[1];
+
+    private EvalBuffers() {}
+
+    /**
+     * 当前线程的缓冲区
+     * @return
+     */
+    static EvalBuffers current() {
+        return buffers.get();
+    }
+
+    int [] rows(int n) {
+        if (rows.length < n) {
+            rows = new int[Math.max(n, rows.length << 1)];
+        }
+        return rows;
+    }
+
+    boolean [] result(int n) {
+        if (result.length < n) {
+            result = new boolean[Math.max(n, result.length << 1)];
+        }
+        return result;
+    }
+
+    /**
+     * 至少words个字的位图，前words个字已清零
+     * @param words
+     * @return
+     */
+    long [] mask(int words) {
+        if (mask.length < words) {
+            mask = new long[Math.max(words, mask.length << 1)];
+        }
+        else {
+            Arrays.fill(mask, 0, words, 0L);
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,124 @@
+package cn.edu.nju.checker;
+
+import cn.edu.nju.builder.AbstractCheckerBuilder;
+import cn.edu.nju.node.CCTNode;
+import cn.edu.nju.node.STNode;
+import cn.edu.nju.pattern.Pattern;
+import cn.edu.nju.util.LinkSet;
+import cn.edu.nju.util.ParamStack;
+
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Con-C的求值器：在每一层量词结点上按估计的子树大小递归二分子结点区间，
+ * 大于阈值的区间fork为子任务，由ForkJoinPool的工作窃取自动均衡负载，小于阈值的区间按ECC顺序求值
+ */
+class ForkJoinEccChecker extends EccChecker {
+    private volatile long threshold = Long.MAX_VALUE;
+
+    ForkJoinEccChecker(Map<String, Pattern> patternMap, Map<String, STNode> stMap) {
+        super(patternMap, stMap);
+    }
+
+    /**
+     * 设置顺序求值的子树大小阈值
+     * @param threshold
+     */
+    void setThreshold(long threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * 量词结点[start, end]内子结点对应子树的估计大小
+     */
+    private long costOf(CCTNode quantNode, int start, int end) {
+        long num = end - start + 1;
+        STNode stNode = quantNode.getContextSetName() == null ? null : stMap.get(quantNode.getContextSetName());
+        return stNode == null ? num : num * calcTreeSize((STNode) stNode.getFirstChild());
+    }
+
+    @Override
+    protected Result universalNodeEval(CCTNode universalNode, ParamStack param, int start, int end) {
+        if (start >= end || costOf(universalNode, start, end) <= threshold) {
+            return super.universalNodeEval(universalNode, param, start, end); //不拆分时不复制外层context
+        }
+        return new RangeTask(universalNode, param.toRows(), start, end).compute();
+    }
+
+    @Override
+    protected Result existentialNodeEval(CCTNode existentialNode, ParamStack param, int start, int end) {
+        if (start >= end || costOf(existentialNode, start, end) <= threshold) {
+            return super.existentialNodeEval(existentialNode, param, start, end);
+        }
+        return new RangeTask(existentialNode, param.toRows(), start, end).compute();
+    }
+
+    private class RangeTask extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final CCTNode quantNode;
+
+        private final int [] prefix; //外层context，由执行任务的线程压入自己的栈
+
+        private final int start;
+
+        private final int end;
+
+        RangeTask(CCTNode quantNode, int [] prefix, int start, int end) {
+            this.quantNode = quantNode;
+            this.prefix = prefix;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Result compute() {
+            ParamStack param = ParamStack.current();
+            int savedBase = param.enter(prefix);
+            try {
+                return evaluate(param);
+            } finally {
+                param.exit(savedBase);
+            }
+        }
+
+        private Result evaluate(ParamStack param) {
+            boolean universal = quantNode.getNodeType() == CCTNode.UNIVERSAL_NODE;
+            if (start >= end || costOf(quantNode, start, end) <= threshold) {
+                //本层顺序求值，子结点中较大的量词仍会继续拆分
+                return universal ? ForkJoinEccChecker.super.universalNodeEval(quantNode, param, start, end)
+                        : ForkJoinEccChecker.super.existentialNodeEval(quantNode, param, start, end);
+            }
+
+            int mid = (start + end) >>> 1;
+            RangeTask left = new RangeTask(quantNode, prefix, start, mid);
+            left.fork();
+            Result rightResult = new RangeTask(quantNode, prefix, mid + 1, end).compute();
+            Result leftResult = left.join();
+
+            boolean leftValue = leftResult.getValue();
+            boolean rightValue = rightResult.getValue();
+            boolean value = universal ? leftValue && rightValue : leftValue || rightValue;
+            quantNode.setNodeValue(value);
+            if (AbstractCheckerBuilder.twoPhaseEval) {
+                return new Result(value, null);
+            }
+            else if (!quantNode.needsLink(value)) {
+                quantNode.setLink(null);
+                return new Result(value, null);
+            }
+
+            //子区间的link由取值与其相同的子结点组成，合并取值与本结点相同的子区间
+            LinkSet link = new LinkSet();
+            if (leftValue == value) {
+                link.addAll(leftResult.getLink());
+            }
+            if (rightValue == value) {
+                link.addAll(rightResult.getLink());
+            }
+            quantNode.setLink(link);
+            return new Result(value, link);
+        }
+    }
+}
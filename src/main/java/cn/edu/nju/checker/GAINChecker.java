@@ -5,10 +5,12 @@ import static jcuda.driver.JCudaDriver.*;
 import cn.edu.nju.context.Context;
 import cn.edu.nju.memory.*;
 import cn.edu.nju.node.CCTNode;
+import cn.edu.nju.node.CUnitLayout;
 import cn.edu.nju.node.NodeType;
 import cn.edu.nju.node.STNode;
 import cn.edu.nju.pattern.Pattern;
-import cn.edu.nju.util.LogFileHelper;
+import cn.edu.nju.util.LinkHelper;
+import cn.edu.nju.util.LinkSet;
 import jcuda.Pointer;
 import jcuda.Sizeof;
 import jcuda.driver.CUcontext;
@@ -20,6 +22,8 @@ import java.util.*;
 
 public class GAINChecker extends Checker {
 
+    private CUnitLayout layout;
+
     private int stSize;
 
     private int [] branchSize;
@@ -70,16 +74,12 @@ public class GAINChecker extends Checker {
     }
 
     private void init(String kernelFilePath, List<String> contexts, CUcontext cuContext, GPUResult gpuResult) {
-        this.stSize = computeSTSize(this.stRoot);
-        //       System.out.println(name + ": " + stSize);
-
-        this.branchSize = new int[this.stSize];
-
         //计算cunit以及为语法树重排序(前序遍历)
-        this.constraintNodes = new STNode[this.stSize];
-        this.cunits = new ArrayList<>();
-        split(this.stRoot);
-        this.cunits.add(-1);
+        this.layout = new CUnitLayout(this.stRoot, this.patternMap);
+        this.stSize = layout.getSTSize();
+        this.branchSize = layout.getBranchSize();
+        this.constraintNodes = layout.getConstraintNodes();
+        this.cunits = layout.getCunits();
         //将语法树信息拷贝到GPU
 
         //this.genTruthValue = KernelLauncher.load(kernelFilePath, "gen_truth_value");
@@ -155,28 +155,8 @@ public class GAINChecker extends Checker {
                 }
             }
             else {
-                String name = constraintNodes[i].getNodeName();
-                if("sz_loc_range".equals(name)) {
-                    nodeType[i] = NodeType.SZ_LOC_RANGE;
-                }
-                else if("same".equals(name)) {
-                    nodeType[i] = NodeType.SAME;
-                }
-                else if("sz_loc_close".equals(name)) {
-                    nodeType[i] = NodeType.SZ_LOC_CLOSE;
-                }
-                else if("sz_spd_close".equals(name)) {
-                    nodeType[i] = NodeType.SZ_SPD_CLOSE;
-                }
-                else if("sz_loc_dist".equals(name)) {
-                    nodeType[i] = NodeType.SZ_LOC_DIST;
-                }
-                else if("sz_loc_dist_neq".equals(name)) {
-                    nodeType[i] = NodeType.SZ_LOC_DIST_NEQ;
-                }
-                else {
-                    assert false:"BFunc type error.";
-                }
+                nodeType[i] = constraintNodes[i].getFuncType(); //解析rule时已确定操作码
+                assert nodeType[i] != -1:"BFunc type error.";
             }
 
             this.gpuRuleMemory = new GPURuleMemory(stSize, parent, leftChild, rightChild, nodeType, patternId);
@@ -189,8 +169,7 @@ public class GAINChecker extends Checker {
     public boolean doCheck() {
        // assert false:"Something is being to do.";
         checkTimes++;
-        computeRTTBranchSize(this.stRoot);
-        int cctSize = branchSize[stSize - 1];
+        int cctSize = layout.computeBranchSize();
 
         assert cctSize <= Config.MAX_CCT_SIZE:"CCT size overflow: " + cctSize;
 
@@ -200,7 +179,7 @@ public class GAINChecker extends Checker {
         cuMemcpyHtoD(this.deviceBranchSize, Pointer.to(branchSize), stSize * Sizeof.INT);
 
         for(int i = cunits.size() - 2; i >= 0; i--) {
-            int ccopyNum = computeCCopyNum(cunits.get(i));
+            int ccopyNum = layout.computeCCopyNum(cunits.get(i));
             //System.out.println("num: " + ccopyNum);
             if(ccopyNum == 0) {
                 continue;
@@ -255,21 +234,12 @@ public class GAINChecker extends Checker {
 
         clearCriticalSet();
 
+        LinkSet linkSet = new LinkSet(size);
         for(int i = 0; i < size; i++) {
-            String link = "";
-            for(int j = 0; j < Config.MAX_PARAN_NUM; j++) {
-                if(links[i * Config.MAX_PARAN_NUM + j] != -1) {
-                    link = link + "ctx_" + links[i * Config.MAX_PARAN_NUM + j] + " ";
-                }
-            }
-
-            addCriticalSet(link);
-
-            if(addIncLink(link)) {
-                LogFileHelper.getLogger().info(getName() + " " + link, false);
-            }
-            //link = link.substring(0, link.length() - 1);
+            linkSet.add(LinkHelper.pack(links[i * Config.MAX_PARAN_NUM], links[i * Config.MAX_PARAN_NUM + 1]));
         }
+
+        addViolatedLinks(linkSet);
     }
 
     @Override
@@ -285,8 +255,8 @@ public class GAINChecker extends Checker {
 
 
     @Override
-    public boolean delete(String patternId, String timestamp) {
-        if(!deleteContextFromPattern(patternId, timestamp)) {
+    public boolean delete(String patternId, long time) {
+        if(!deleteContextFromPattern(patternId, time)) {
             return false;
         }
         assert patternMap.get(patternId).getContextList().size() <= Config.MAX_PATTERN_SIZE:"pattern size overflow.";
@@ -294,100 +264,6 @@ public class GAINChecker extends Checker {
     }
 
 
-    private int computeSTSize(STNode root) {
-        if(root == null) {
-            return 0;
-        }
-        int type = root.getNodeType();
-        if(type == STNode.UNIVERSAL_NODE || type == NodeType.EXISTENTIAL_NODE || type == STNode.NOT_NODE) {
-            return 1 + computeSTSize((STNode) root.getFirstChild());
-        }
-        else if(type == STNode.AND_NODE || type == STNode.IMPLIES_NODE) { //not support 'OR' node type
-            return 1 + computeSTSize((STNode) root.getFirstChild()) + computeSTSize((STNode) root.getLastChild());
-        }
-        else if(type == STNode.BFUNC_NODE) {
-            return 1;
-        }
-        else {
-            assert false:"Node type error, type:  " +  type;
-            return 0;
-        }
-
-    }
-
-    private void split(STNode root) {
-        Queue<STNode> rootOfCunit = new LinkedList<>();
-        rootOfCunit.offer(root);
-        int [] currentNodeNum = new int[1];
-        currentNodeNum[0] = this.stSize - 1;
-        while(!rootOfCunit.isEmpty()) {
-            STNode rootOfNextCunit = rootOfCunit.poll();
-            cunits.add(currentNodeNum[0]);
-            parseCunit(rootOfCunit, rootOfNextCunit, currentNodeNum);
-        }
-    }
-
-    private void parseCunit(Queue<STNode> rootOfCunit, STNode node,int []currentNodeNum) {
-        //假定非全称/存在量词的子树中不会有全称/存在量词节点
-        if(node == null) {
-            return ;
-        }
-  //      System.out.println(currentNodeNum[0] + " :" + node.getNodeName());
-        node.setNodeNum(currentNodeNum[0]);
-        constraintNodes[currentNodeNum[0]] = node;
-        currentNodeNum[0]--;
-        int type = node.getNodeType();
-        if (type == STNode.UNIVERSAL_NODE || type == STNode.EXISTENTIAL_NODE) {
-            rootOfCunit.offer((STNode) node.getFirstChild());
-        }
-        else if(type == STNode.IMPLIES_NODE || type == STNode.AND_NODE){
-            parseCunit(rootOfCunit, (STNode) node.getLastChild(), currentNodeNum);
-            parseCunit(rootOfCunit, (STNode) node.getFirstChild(), currentNodeNum);
-        }
-        else if(type == STNode.NOT_NODE) {
-            parseCunit(rootOfCunit, (STNode) node.getFirstChild(), currentNodeNum);
-        }
-        else if(type == STNode.BFUNC_NODE) {
-            return;
-        }
-    }
-
-    private int computeCCopyNum(int cunit) {
-        STNode node = (STNode)constraintNodes[cunit].getParentTreeNode();
-        int ccopyNum = 1;
-        while(node != null) {
-            int type = node.getNodeType();
-            if(type == STNode.UNIVERSAL_NODE || type == STNode.EXISTENTIAL_NODE) {
-                ccopyNum *= patternMap.get(node.getContextSetName()).getContextList().size();
-            }
-            node = (STNode) node.getParentTreeNode();
-        }
-        return ccopyNum;
-    }
-
-    private int computeRTTBranchSize(STNode root) {
-        assert root != null:"root is null.";
-        int type = root.getNodeType();
-        int size = 0;
-        if(type == STNode.UNIVERSAL_NODE || type == STNode.EXISTENTIAL_NODE) {
-            size = 1 + patternMap.get(root.getContextSetName()).getContextList().size() * computeRTTBranchSize((STNode) root.getFirstChild());
-        }
-        else if(type == STNode.NOT_NODE) {
-            size = 1 + computeRTTBranchSize((STNode)root.getFirstChild());
-        }
-        else if(type == STNode.AND_NODE || type == STNode.IMPLIES_NODE) {
-            size = 1 + computeRTTBranchSize((STNode)root.getFirstChild()) + computeRTTBranchSize((STNode)root.getLastChild());
-        }
-        else if(type == STNode.BFUNC_NODE){
-            size = 1;
-        }
-        else {
-            assert false:"Type error.";
-        }
-        branchSize[root.getNodeNum()] = size;
-        return size;
-    }
-
     @Override
     public void reset() {
         cuMemFree(this.deviceBranchSize);
@@ -1,14 +1,11 @@
 package cn.edu.nju.checker;
 
-import cn.edu.nju.context.Context;
 import cn.edu.nju.node.CCTNode;
 import cn.edu.nju.node.STNode;
 import cn.edu.nju.pattern.Pattern;
-import cn.edu.nju.util.LinkHelper;
-import cn.edu.nju.util.LogFileHelper;
+import cn.edu.nju.util.ParamStack;
 
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Created by njucjc on 2017/10/7.
@@ -26,6 +23,10 @@ public class PccChecker extends Checker{
     protected PccChecker() {
 
     }
+
+    protected PccChecker(Map<String, Pattern> patternMap, Map<String, STNode> stMap) {
+        super(patternMap, stMap);
+    }
     /**
      *
      * @return violated link
@@ -34,27 +35,25 @@ public class PccChecker extends Checker{
     public boolean doCheck() {
 
         checkTimes++;
-        List<Context> param = new CopyOnWriteArrayList<>();
-        evaluation(cctRoot, param); //PCC计算
+        boolean rootValue;
+        if (cctArena != null) {
+            rootValue = cctArena.evaluation(true); //PCC计算
+        }
+        else {
+            ParamStack param = ParamStack.current();
+            evaluation(cctRoot, param); //PCC计算
+            rootValue = cctRoot.getNodeValue();
+        }
 
         boolean value = true;
 
         clearCriticalSet();
 
-        if (!cctRoot.getNodeValue()) {
-            String [] links = LinkHelper.splitLinks(cctRoot.getLink());
-            for (String link : links) {
-
-                addCriticalSet(link);
-
-                if (addIncLink(link)) {
-                    LogFileHelper.getLogger().info(getName() + " " + link,false);
-                }
-            }
-
-            this.maxLinkSize = this.maxLinkSize < links.length ? links.length : this.maxLinkSize;
+        if (!rootValue) {
+            addViolatedLinks(getRootLink());
             value = false;
         }
+        evictToBudget(); //配置cctBudget时换出超出上限的子树
 
         return value;
     }
@@ -66,7 +65,7 @@ public class PccChecker extends Checker{
      * @return
      */
     @Override
-    protected boolean evaluation(CCTNode cctRoot, List<Context> param) {
+    protected boolean evaluation(CCTNode cctRoot, ParamStack param) {
         if(cctRoot.getNodeStatus() == CCTNode.NC_STATE) { //无需重算就直接返回
             return cctRoot.getNodeValue();
         }
@@ -1,14 +1,16 @@
 package cn.edu.nju.checker;
 
+import cn.edu.nju.util.Links;
+
 /**
  * Created by njucjc at 2018/1/10
  */
 public class Result {
     private boolean value;
 
-    private String link;
+    private Links link;
 
-    public Result(boolean value, String link) {
+    public Result(boolean value, Links link) {
         this.value = value;
         this.link = link;
     }
@@ -21,11 +23,11 @@ public class Result {
         this.value = value;
     }
 
-    public String getLink() {
+    public Links getLink() {
         return link;
     }
 
-    public void setLink(String link) {
+    public void setLink(Links link) {
         this.link = link;
     }
 }
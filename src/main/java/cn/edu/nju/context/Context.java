@@ -1,91 +1,74 @@
 package cn.edu.nju.context;
 
+import cn.edu.nju.util.TimestampHelper;
+
 /**
  * Created by njucjc on 2017/10/3.
+ * 属性存放在ContextStore中，Context只保存所在的行号，由ContextStore.add创建
  */
 public class Context {
-    private int id;
-    private String timestamp;
-    private String plateNumber;
-    private double longitude;
-    private double latitude;
-    private double speed;
-    private int status;
-
-    public Context(int id, String timestamp, String plateNumber, double longitude, double latitude, double speed, int status) {
-        this.id = id;
-        this.timestamp = timestamp;
-        this.plateNumber = plateNumber;
-        this.longitude = longitude;
-        this.latitude = latitude;
-        this.speed = speed;
-        this.status = status;
+    private final int row;
+
+    Context(int row) {
+        this.row = row;
     }
 
-    public int getId() {
-        return id;
+    /**
+     * 在ContextStore中的行号
+     * @return
+     */
+    public int getRow() {
+        return row;
     }
 
-    public void setId(int id) {
-        this.id = id;
+    public int getId() {
+        return ContextStore.getId(row);
     }
 
     public String getTimestamp() {
-        return timestamp;
+        return TimestampHelper.format(getTime());
     }
 
-    public void setTimestamp(String timestamp) {
-        this.timestamp = timestamp;
+    public long getTime() {
+        return ContextStore.getTime(row);
     }
 
-    public String getPlateNumber() {
-        return plateNumber;
+    public void setTime(long time) {
+        ContextStore.setTime(row, time);
     }
 
-    public void setPlateNumber(String plateNumber) {
-        this.plateNumber = plateNumber;
+    public String getPlateNumber() {
+        return PlateDictionary.decode(getPlateId());
     }
 
-    public double getLongitude() {
-        return longitude;
+    public int getPlateId() {
+        return ContextStore.getPlateId(row);
     }
 
-    public void setLongitude(double longitude) {
-        this.longitude = longitude;
+    public double getLongitude() {
+        return ContextStore.getLongitude(row);
     }
 
     public double getLatitude() {
-        return latitude;
-    }
-
-    public void setLatitude(double latitude) {
-        this.latitude = latitude;
+        return ContextStore.getLatitude(row);
     }
 
     public double getSpeed() {
-        return speed;
-    }
-
-    public void setSpeed(double speed) {
-        this.speed = speed;
+        return ContextStore.getSpeed(row);
     }
 
     public int getStatus() {
-        return status;
-    }
-
-    public void setStatus(int status) {
-        this.status = status;
+        return ContextStore.getStatus(row);
     }
 
     public String allForString() {
-        return id + "," + timestamp + "," + plateNumber + ","
-                + longitude + "," + latitude + "," + speed + "," + status;
+        return getId() + "," + getTimestamp() + "," + getPlateNumber() + ","
+                + getLongitude() + "," + getLatitude() + "," + getSpeed() + "," + getStatus();
     }
 
     @Override
     public String toString() {
-        return "ctx_" + id;
+        return "ctx_" + getId();
     }
 
     @Override
@@ -95,11 +78,12 @@ public class Context {
 
         Context context = (Context) o;
 
-        return plateNumber != null ? plateNumber.equals(context.plateNumber) : context.plateNumber == null;
+        return getPlateId() == context.getPlateId();
     }
 
     @Override
     public int hashCode() {
+        String plateNumber = getPlateNumber();
         return plateNumber != null ? plateNumber.hashCode() : 0;
     }
 }
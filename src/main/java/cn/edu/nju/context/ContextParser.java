@@ -1,6 +1,7 @@
 package cn.edu.nju.context;
 
 import cn.edu.nju.builder.AbstractCheckerBuilder;
+import cn.edu.nju.util.TimestampHelper;
 
 /**
  * Created by njucjc on 2017/10/23.
@@ -33,7 +34,8 @@ public class ContextParser {
             System.exit(1);
         }
 
-        return new Context(id, timestamp, plateNumber, longitude, latitude, speed, status);
+        return ContextStore.add(id, TimestampHelper.parseMillis(timestamp), PlateDictionary.encode(plateNumber),
+                longitude, latitude, speed, status);
     }
 
     public Context parseChangeContext(String [] elements) {
@@ -45,9 +47,9 @@ public class ContextParser {
 
         Context context = null;
         try {
-            context = new Context(Integer.parseInt(elements[2]),
-                    elements[3],
-                    elements[4],
+            context = ContextStore.add(Integer.parseInt(elements[2]),
+                    TimestampHelper.parseMillis(elements[3]),
+                    PlateDictionary.encode(elements[4]),
                     Double.parseDouble(elements[5]),
                     Double.parseDouble(elements[6]),
                     Double.parseDouble(elements[7]),
@@ -59,6 +61,19 @@ public class ContextParser {
         return context;
     }
 
+    /**
+     * 只解析change中的时间戳，删除context时使用，不加入ContextStore
+     * @param elements
+     * @return
+     */
+    public long parseChangeTime(String [] elements) {
+        if (elements.length != 9) {
+            System.out.println("[INFO] '"+ AbstractCheckerBuilder.changeFilePath + "'文件格式错误");
+            System.exit(1);
+        }
+        return TimestampHelper.parseMillis(elements[3]);
+    }
+
     public static String updateTime(String str, String time) {
         String [] strs = str.split(",");
         if(strs[0].equals("+") || strs[0].equals("-")) {
@@ -0,0 +1,215 @@
+package cn.edu.nju.context;
+
+import java.util.Arrays;
+
+/**
+ * 所有context的列式存储：每个读入的context分配一个连续的行号，各属性按列存放在基本类型数组中，
+ * Context只保存行号，pattern和CCT通过行号引用context。
+ * 数据文件中id相同且时间相同的context（同一context加入多个pattern）只存一行。
+ * 只由读入context的线程写入，检测线程在检测开始后读取（线程池提交保证可见性）。
+ * 使用列文件时（contextStore=mmap），前mappedRows行为数据文件中的context（行号即id），
+ * 从内存映射的列文件中读取，不占用堆；其余context（如数据文件之外的id）依次追加在其后的堆内数组中。
+ * 堆内的行按pattern窗口引用计数（Pattern加入/过期时retain/release），处理完一个变化后由reclaim回收
+ * 不再被任何窗口引用的行，之后读入的context复用这些行，堆内行数只与窗口大小有关
+ */
+public class ContextStore {
+    private static MappedColumns mapped = null;
+
+    private static int mappedRows = 0;
+
+    private static int size = 0; //堆内的行数
+
+    private static int [] ids = new int[1024]; //数据文件中的id，用于输出和link
+
+    private static long [] times = new long[1024];
+
+    private static int [] plateIds = new int[1024];
+
+    private static double [] longitudes = new double[1024];
+
+    private static double [] latitudes = new double[1024];
+
+    private static double [] speeds = new double[1024];
+
+    private static int [] statuses = new int[1024];
+
+    private static Context [] views = new Context[1024]; //堆内每行对应唯一的Context
+
+    private static int [] rowOfId = new int[1024]; //id -> 行号 + 1，0表示没有
+
+    private static int [] refs = new int[1024]; //引用该行的pattern窗口数
+
+    private static int [] freeRows = new int[64]; //已回收、可复用的堆内行
+
+    private static int freeSize = 0;
+
+    private static int [] pending = new int[64]; //可能不再被引用、等待reclaim检查的堆内行
+
+    private static int pendingSize = 0;
+
+    /**
+     * 使用数据文件对应的内存映射列文件，在读入任何context之前调用
+     * @param dataFilePath
+     */
+    public static synchronized void map(String dataFilePath) {
+        assert mappedRows == 0 && size == 0:"[DEBUG] ContextStore is not empty.";
+        mapped = MappedColumns.open(dataFilePath);
+        mappedRows = mapped.getRows();
+    }
+
+    public static boolean isMapped() {
+        return mapped != null;
+    }
+
+    /**
+     * 加入一个context
+     * @return context对应的行
+     */
+    public static synchronized Context add(int id, long time, int plateId, double longitude, double latitude, double speed, int status) {
+        if (id >= 0 && id < mappedRows && mapped.getTime(id) == time && mapped.getPlateId(id) == plateId
+                && mapped.getLongitude(id) == longitude && mapped.getLatitude(id) == latitude
+                && mapped.getSpeed(id) == speed && mapped.getStatus(id) == status) {
+            return new Context(id); //数据文件中的context，不再占用堆内的行
+        }
+        if (id >= 0 && id < rowOfId.length && rowOfId[id] != 0) {
+            int row = rowOfId[id] - 1;
+            if (times[row] == time && plateIds[row] == plateId && longitudes[row] == longitude
+                    && latitudes[row] == latitude && speeds[row] == speed && statuses[row] == status) {
+                return views[row];
+            }
+        }
+
+        int row;
+        if (freeSize > 0) {
+            row = freeRows[--freeSize];
+        }
+        else {
+            if (size == ids.length) {
+                int n = size << 1;
+                ids = Arrays.copyOf(ids, n);
+                times = Arrays.copyOf(times, n);
+                plateIds = Arrays.copyOf(plateIds, n);
+                longitudes = Arrays.copyOf(longitudes, n);
+                latitudes = Arrays.copyOf(latitudes, n);
+                speeds = Arrays.copyOf(speeds, n);
+                statuses = Arrays.copyOf(statuses, n);
+                views = Arrays.copyOf(views, n);
+                refs = Arrays.copyOf(refs, n);
+            }
+            row = size++;
+        }
+        ids[row] = id;
+        times[row] = time;
+        plateIds[row] = plateId;
+        longitudes[row] = longitude;
+        latitudes[row] = latitude;
+        speeds[row] = speed;
+        statuses[row] = status;
+        views[row] = new Context(mappedRows + row);
+        refs[row] = 0;
+        addPending(row); //可能不属于任何pattern
+
+        if (id >= 0) {
+            if (id >= rowOfId.length) {
+                rowOfId = Arrays.copyOf(rowOfId, Math.max(id + 1, rowOfId.length << 1));
+            }
+            rowOfId[id] = row + 1;
+        }
+        return views[row];
+    }
+
+    private static void addPending(int row) {
+        if (pendingSize == pending.length) {
+            pending = Arrays.copyOf(pending, pendingSize << 1);
+        }
+        pending[pendingSize++] = row;
+    }
+
+    /**
+     * context加入一个pattern窗口
+     * @param context
+     */
+    public static synchronized void retain(Context context) {
+        int row = context.getRow() - mappedRows;
+        if (row >= 0) {
+            refs[row]++;
+        }
+    }
+
+    /**
+     * context从一个pattern窗口中过期
+     * @param context
+     */
+    public static synchronized void release(Context context) {
+        int row = context.getRow() - mappedRows;
+        if (row >= 0 && --refs[row] == 0) {
+            addPending(row);
+        }
+    }
+
+    /**
+     * 回收不再被任何pattern窗口引用的堆内行，在一个变化处理完（检测结束）后调用，
+     * 此时CCT中已没有过期context的结点，link中只保存id
+     */
+    public static synchronized void reclaim() {
+        for (int i = 0; i < pendingSize; i++) {
+            int row = pending[i];
+            if (refs[row] != 0 || views[row] == null) {
+                continue; //又被加入窗口，或已回收
+            }
+            views[row] = null;
+            int id = ids[row];
+            if (id >= 0 && id < rowOfId.length && rowOfId[id] == row + 1) {
+                rowOfId[id] = 0;
+            }
+            if (freeSize == freeRows.length) {
+                freeRows = Arrays.copyOf(freeRows, freeSize << 1);
+            }
+            freeRows[freeSize++] = row;
+        }
+        pendingSize = 0;
+    }
+
+    public static Context get(int row) {
+        return row < mappedRows ? new Context(row) : views[row - mappedRows];
+    }
+
+    public static int size() {
+        return mappedRows + size;
+    }
+
+    public static int getId(int row) {
+        return row < mappedRows ? row : ids[row - mappedRows];
+    }
+
+    public static long getTime(int row) {
+        return row < mappedRows ? mapped.getTime(row) : times[row - mappedRows];
+    }
+
+    public static int getPlateId(int row) {
+        return row < mappedRows ? mapped.getPlateId(row) : plateIds[row - mappedRows];
+    }
+
+    public static double getLongitude(int row) {
+        return row < mappedRows ? mapped.getLongitude(row) : longitudes[row - mappedRows];
+    }
+
+    public static double getLatitude(int row) {
+        return row < mappedRows ? mapped.getLatitude(row) : latitudes[row - mappedRows];
+    }
+
+    public static double getSpeed(int row) {
+        return row < mappedRows ? mapped.getSpeed(row) : speeds[row - mappedRows];
+    }
+
+    public static int getStatus(int row) {
+        return row < mappedRows ? mapped.getStatus(row) : statuses[row - mappedRows];
+    }
+
+    /* 仅供生成change文件时临时修改context的时间（用后恢复）；相同的context共享一行，其余属性不提供修改，列文件中的行只读 */
+
+    static synchronized void setTime(int row, long time) {
+        assert row >= mappedRows:"[DEBUG] Mapped context is read-only.";
+        times[row - mappedRows] = time;
+    }
+}
@@ -0,0 +1,213 @@
+package cn.edu.nju.context;
+
+import cn.edu.nju.util.TimestampHelper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 由数据文件生成的内存映射列文件：第i行为数据文件第i行的context（即id为i），各属性按列存放在堆外。
+ * 文件格式：头部（魔数、版本、行数、数据文件大小与修改时间、车牌号个数），
+ * 之后依次为时间、经度、纬度、速度（各8字节）、车牌号编号、状态（各4字节）列，最后为车牌号字典。
+ * 数据文件未变化时直接复用，否则重新生成
+ */
+class MappedColumns {
+    private static final long MAGIC = 0x4e4a55435458L; //"NJUCTX"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+
+    private final int rows;
+
+    private final MappedByteBuffer times;
+
+    private final MappedByteBuffer longitudes;
+
+    private final MappedByteBuffer latitudes;
+
+    private final MappedByteBuffer speeds;
+
+    private final MappedByteBuffer plateIds;
+
+    private final MappedByteBuffer statuses;
+
+    private final int [] plateRemap; //文件中的车牌号编号 -> PlateDictionary中的编号
+
+    private MappedColumns(RandomAccessFile file, int rows, int plateCount) throws IOException {
+        this.rows = rows;
+        FileChannel channel = file.getChannel();
+        long offset = HEADER_SIZE;
+        this.times = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) rows * 8);
+        offset += (long) rows * 8;
+        this.longitudes = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) rows * 8);
+        offset += (long) rows * 8;
+        this.latitudes = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) rows * 8);
+        offset += (long) rows * 8;
+        this.speeds = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) rows * 8);
+        offset += (long) rows * 8;
+        this.plateIds = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) rows * 4);
+        offset += (long) rows * 4;
+        this.statuses = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) rows * 4);
+        offset += (long) rows * 4;
+
+        //车牌号个数与车辆数相同，留在堆中
+        this.plateRemap = new int[plateCount];
+        file.seek(offset);
+        for (int i = 0; i < plateCount; i++) {
+            plateRemap[i] = PlateDictionary.encode(file.readUTF());
+        }
+    }
+
+    /**
+     * 打开数据文件对应的列文件，不存在或已过期时先生成
+     * @param dataFilePath
+     * @return
+     */
+    static MappedColumns open(String dataFilePath) {
+        File data = new File(dataFilePath);
+        File columns = new File(dataFilePath + ".cols");
+        try {
+            if (!isValid(columns, data)) {
+                System.out.println("[INFO] 生成context列文件：" + columns.getPath());
+                build(data, columns);
+            }
+            RandomAccessFile file = new RandomAccessFile(columns, "r");
+            file.seek(12);
+            int rows = file.readInt();
+            file.seek(32);
+            int plateCount = file.readInt();
+            MappedColumns mappedColumns = new MappedColumns(file, rows, plateCount);
+            file.close(); //映射在通道关闭后仍然有效
+            return mappedColumns;
+        } catch (IOException e) {
+            System.out.println("[INFO] context列文件读写失败：" + columns.getPath());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private static boolean isValid(File columns, File data) throws IOException {
+        if (!columns.exists()) {
+            return false;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(columns, "r")) {
+            if (file.length() < HEADER_SIZE || file.readLong() != MAGIC || file.readInt() != VERSION) {
+                return false;
+            }
+            file.readInt(); //rows
+            return file.readLong() == data.length() && file.readLong() == data.lastModified();
+        }
+    }
+
+    private static void build(File data, File columns) throws IOException {
+        //第一遍：统计行数与车牌号
+        Map<String, Integer> plates = new LinkedHashMap<>();
+        long count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(data))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                plates.computeIfAbsent(split(line, data)[1], k -> plates.size());
+                count++;
+            }
+        }
+        if (count * 8 > Integer.MAX_VALUE) {
+            System.out.println("[INFO] 数据文件行数超过列文件的上限：" + count);
+            System.exit(1);
+        }
+        int rows = (int) count;
+
+        //第二遍：写入各列
+        try (RandomAccessFile file = new RandomAccessFile(columns, "rw")) {
+            file.setLength(0);
+            long columnsEnd = HEADER_SIZE + (long) rows * 40;
+            file.setLength(columnsEnd);
+            FileChannel channel = file.getChannel();
+            List<MappedByteBuffer> buffers = new ArrayList<>();
+            long offset = HEADER_SIZE;
+            for (int width : new int[]{8, 8, 8, 8, 4, 4}) {
+                buffers.add(channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) rows * width));
+                offset += (long) rows * width;
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(data))) {
+                for (int row = 0; row < rows; row++) {
+                    String [] fields = split(reader.readLine(), data);
+                    try {
+                        buffers.get(0).putLong(row << 3, TimestampHelper.parseMillis(fields[0]));
+                        buffers.get(1).putDouble(row << 3, Double.parseDouble(fields[2]));
+                        buffers.get(2).putDouble(row << 3, Double.parseDouble(fields[3]));
+                        buffers.get(3).putDouble(row << 3, Double.parseDouble(fields[4]));
+                        buffers.get(4).putInt(row << 2, plates.get(fields[1]));
+                        buffers.get(5).putInt(row << 2, Integer.parseInt(fields[6]));
+                    } catch (NumberFormatException e) {
+                        System.out.println("[INFO] '" + data.getPath() + "'文件格式错误");
+                        System.exit(1);
+                    }
+                }
+            }
+            for (MappedByteBuffer buffer : buffers) {
+                buffer.force();
+            }
+
+            file.seek(columnsEnd);
+            for (String plate : plates.keySet()) {
+                file.writeUTF(plate);
+            }
+
+            //最后写入头部，生成中断时文件无效
+            file.seek(0);
+            file.writeLong(MAGIC);
+            file.writeInt(VERSION);
+            file.writeInt(rows);
+            file.writeLong(data.length());
+            file.writeLong(data.lastModified());
+            file.writeInt(plates.size());
+        }
+    }
+
+    private static String [] split(String line, File data) {
+        String [] fields = line.split(",");
+        if (fields.length != 7) {
+            System.out.println("[INFO] '" + data.getPath() + "'文件格式错误");
+            System.exit(1);
+        }
+        return fields;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    long getTime(int row) {
+        return times.getLong(row << 3);
+    }
+
+    int getPlateId(int row) {
+        return plateRemap[plateIds.getInt(row << 2)];
+    }
+
+    double getLongitude(int row) {
+        return longitudes.getDouble(row << 3);
+    }
+
+    double getLatitude(int row) {
+        return latitudes.getDouble(row << 3);
+    }
+
+    double getSpeed(int row) {
+        return speeds.getDouble(row << 3);
+    }
+
+    int getStatus(int row) {
+        return statuses.getInt(row << 2);
+    }
+}
@@ -0,0 +1,40 @@
+package cn.edu.nju.context;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 车牌号字典编码：每个车牌号对应一个整数编号，same只需比较编号，输出时再解码为车牌号
+ */
+public class PlateDictionary {
+    private static final ConcurrentHashMap<String, Integer> dictionary = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<Integer, String> plateNumbers = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger nextId = new AtomicInteger(0);
+
+    /**
+     * 车牌号的编号，第一次出现时分配
+     * @param plateNumber
+     * @return 编号，plateNumber为null时返回-1
+     */
+    public static int encode(String plateNumber) {
+        if (plateNumber == null) {
+            return -1;
+        }
+        return dictionary.computeIfAbsent(plateNumber, k -> {
+            int id = nextId.getAndIncrement();
+            plateNumbers.put(id, k);
+            return id;
+        });
+    }
+
+    /**
+     * 编号对应的车牌号
+     * @param plateId
+     * @return 车牌号，plateId为-1时返回null
+     */
+    public static String decode(int plateId) {
+        return plateId == -1 ? null : plateNumbers.get(plateId);
+    }
+}
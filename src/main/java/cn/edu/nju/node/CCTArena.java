@@ -0,0 +1,501 @@
+package cn.edu.nju.node;
+
+import cn.edu.nju.context.ContextStore;
+import cn.edu.nju.pattern.ContextColumns;
+import cn.edu.nju.pattern.Pattern;
+import cn.edu.nju.util.BFuncHelper;
+import cn.edu.nju.util.LinkHelper;
+import cn.edu.nju.util.LinkSet;
+import cn.edu.nju.util.Links;
+
+import java.util.*;
+
+/**
+ * 以基本类型数组存储的CCT，结点排布方式与GAINChecker.computeRTTBranchSize一致：
+ * 根结点位于size - 1，量词结点的第i个子树根位于offset - (i * step + 1)，
+ * and/implies的右子树根位于offset - 1，左子树根位于offset - (右子树大小 + 1)。
+ * 数组在多次检测之间复用，仅在容量不足时扩容。
+ */
+public class CCTArena {
+
+    private Map<String, Pattern> patternMap;
+
+    /* 语法树结点（前序编号） */
+    private STNode [] stNodes;
+
+    private int [] stType;
+
+    private int [] stLeft;
+
+    private int [] stRight;
+
+    private int [] stBranchSize;
+
+    private boolean [] stChanged;
+
+    private ContextColumns [] stColumns;
+
+    /* 记录上次排布以来各pattern头部删除与尾部新增的context数 */
+    private Map<String, int []> patternDelta;
+
+    /* 当前CCT */
+    private int [] nodeType;
+
+    private int [] nodeStatus;
+
+    private boolean [] nodeValue;
+
+    private int [] contextId;
+
+    private int [] firstChild; //第一个子结点到本结点的距离
+
+    private int [] childNum;
+
+    private int [] childStep; //相邻子结点的间隔（有符号）
+
+    private int [] stIndex;
+
+    /* 上一次排布的CCT，用于PCC保留未变化子树的结果 */
+    private int [] prevNodeType;
+
+    private int [] prevNodeStatus;
+
+    private boolean [] prevNodeValue;
+
+    private int [] prevContextId;
+
+    private int [] prevFirstChild;
+
+    private int [] prevChildNum;
+
+    private int [] prevChildStep;
+
+    private int [] prevStIndex;
+
+    private int size;
+
+    private boolean laidOut;
+
+    private int [] params; //由外到内绑定的context在ContextStore中的行号
+
+    public CCTArena(STNode stRoot, Map<String, Pattern> patternMap) {
+        this.patternMap = patternMap;
+
+        List<STNode> order = new ArrayList<>();
+        preorder(stRoot, order);
+        int stSize = order.size();
+
+        this.stNodes = order.toArray(new STNode[stSize]);
+        this.stType = new int[stSize];
+        this.stLeft = new int[stSize];
+        this.stRight = new int[stSize];
+        this.stBranchSize = new int[stSize];
+        this.stChanged = new boolean[stSize];
+        this.stColumns = new ContextColumns[stSize];
+        this.patternDelta = new HashMap<>();
+
+        Map<STNode, Integer> indexMap = new IdentityHashMap<>();
+        for (int i = 0; i < stSize; i++) {
+            indexMap.put(stNodes[i], i);
+        }
+
+        int depth = 0;
+        for (int i = 0; i < stSize; i++) {
+            STNode node = stNodes[i];
+            stType[i] = node.getNodeType();
+            stLeft[i] = node.hasChildNodes() ? indexMap.get(node.getFirstChild()) : -1;
+            stRight[i] = node.hasChildNodes() ? indexMap.get(node.getLastChild()) : -1;
+            if (stType[i] == NodeType.UNIVERSAL_NODE || stType[i] == NodeType.EXISTENTIAL_NODE) {
+                patternDelta.put(node.getContextSetName(), new int[2]);
+                depth++;
+            }
+        }
+
+        this.params = new int[depth + 1];
+        this.size = 0;
+        this.laidOut = false;
+        allocate(16);
+    }
+
+    private void preorder(STNode node, List<STNode> order) {
+        order.add(node);
+        for (TreeNode child : node.getChildTreeNodes()) {
+            preorder((STNode) child, order);
+        }
+    }
+
+    private void allocate(int capacity) {
+        nodeType = new int[capacity];
+        nodeStatus = new int[capacity];
+        nodeValue = new boolean[capacity];
+        contextId = new int[capacity];
+        firstChild = new int[capacity];
+        childNum = new int[capacity];
+        childStep = new int[capacity];
+        stIndex = new int[capacity];
+
+        prevNodeType = new int[capacity];
+        prevNodeStatus = new int[capacity];
+        prevNodeValue = new boolean[capacity];
+        prevContextId = new int[capacity];
+        prevFirstChild = new int[capacity];
+        prevChildNum = new int[capacity];
+        prevChildStep = new int[capacity];
+        prevStIndex = new int[capacity];
+    }
+
+    /**
+     * 扩容时保留当前CCT（交换后作为prev使用）
+     * @param capacity
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= nodeType.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, nodeType.length * 2);
+
+        int [] t = nodeType, s = nodeStatus, c = contextId, f = firstChild, n = childNum, st = childStep, si = stIndex;
+        boolean [] v = nodeValue;
+        allocate(newCapacity);
+        System.arraycopy(t, 0, nodeType, 0, size);
+        System.arraycopy(s, 0, nodeStatus, 0, size);
+        System.arraycopy(v, 0, nodeValue, 0, size);
+        System.arraycopy(c, 0, contextId, 0, size);
+        System.arraycopy(f, 0, firstChild, 0, size);
+        System.arraycopy(n, 0, childNum, 0, size);
+        System.arraycopy(st, 0, childStep, 0, size);
+        System.arraycopy(si, 0, stIndex, 0, size);
+    }
+
+    private void swap() {
+        int [] tmp;
+        boolean [] btmp;
+        tmp = nodeType; nodeType = prevNodeType; prevNodeType = tmp;
+        tmp = nodeStatus; nodeStatus = prevNodeStatus; prevNodeStatus = tmp;
+        btmp = nodeValue; nodeValue = prevNodeValue; prevNodeValue = btmp;
+        tmp = contextId; contextId = prevContextId; prevContextId = tmp;
+        tmp = firstChild; firstChild = prevFirstChild; prevFirstChild = tmp;
+        tmp = childNum; childNum = prevChildNum; prevChildNum = tmp;
+        tmp = childStep; childStep = prevChildStep; prevChildStep = tmp;
+        tmp = stIndex; stIndex = prevStIndex; prevStIndex = tmp;
+    }
+
+    /**
+     * pattern尾部新增了一个context
+     * @param patternId
+     */
+    public void addContext(String patternId) {
+        int [] delta = patternDelta.get(patternId);
+        if (delta != null) {
+            delta[1]++;
+        }
+    }
+
+    /**
+     * pattern头部删除了num个context
+     * @param patternId
+     * @param num
+     */
+    public void deleteContexts(String patternId, int num) {
+        int [] delta = patternDelta.get(patternId);
+        if (delta != null) {
+            delta[0] += num;
+        }
+    }
+
+    private boolean isChanged(String patternId) {
+        int [] delta = patternDelta.get(patternId);
+        return delta[0] != 0 || delta[1] != 0;
+    }
+
+    private int computeBranchSize(int st) {
+        int type = stType[st];
+        int branchSize;
+        boolean changed;
+        if (type == NodeType.UNIVERSAL_NODE || type == NodeType.EXISTENTIAL_NODE) {
+            String patternId = stNodes[st].getContextSetName();
+            ContextColumns columns = patternMap.get(patternId).getColumns();
+            stColumns[st] = columns;
+            branchSize = 1 + columns.size() * computeBranchSize(stLeft[st]);
+            changed = isChanged(patternId) || stChanged[stLeft[st]];
+        }
+        else if (type == NodeType.NOT_NODE) {
+            branchSize = 1 + computeBranchSize(stLeft[st]);
+            changed = stChanged[stLeft[st]];
+        }
+        else if (type == NodeType.AND_NODE || type == NodeType.IMPLIES_NODE) {
+            branchSize = 1 + computeBranchSize(stLeft[st]) + computeBranchSize(stRight[st]);
+            changed = stChanged[stLeft[st]] || stChanged[stRight[st]];
+        }
+        else {
+            branchSize = 1;
+            changed = false;
+        }
+        stBranchSize[st] = branchSize;
+        stChanged[st] = changed;
+        return branchSize;
+    }
+
+    /**
+     * 根据pattern的当前内容重新排布CCT
+     * @param incremental 为true时保留未变化子树的结点值与状态
+     */
+    private void layout(boolean incremental) {
+        int newSize = computeBranchSize(0);
+        ensureCapacity(newSize);
+        int oldSize = size;
+        swap();
+        size = newSize;
+
+        if (incremental && laidOut) {
+            remap(0, size - 1, oldSize - 1, -1);
+        }
+        else {
+            build(0, size - 1, -1);
+        }
+
+        for (int [] delta : patternDelta.values()) {
+            delta[0] = 0;
+            delta[1] = 0;
+        }
+        laidOut = true;
+    }
+
+    private void setNode(int st, int slot, int ctxId) {
+        int type = stType[st];
+        nodeType[slot] = type;
+        contextId[slot] = ctxId;
+        stIndex[slot] = st;
+        if (type == NodeType.UNIVERSAL_NODE || type == NodeType.EXISTENTIAL_NODE) {
+            childNum[slot] = stColumns[st].size();
+            firstChild[slot] = 1;
+            childStep[slot] = -stBranchSize[stLeft[st]];
+        }
+        else if (type == NodeType.AND_NODE || type == NodeType.IMPLIES_NODE) {
+            childNum[slot] = 2;
+            firstChild[slot] = 1 + stBranchSize[stRight[st]];
+            childStep[slot] = stBranchSize[stRight[st]];
+        }
+        else if (type == NodeType.NOT_NODE) {
+            childNum[slot] = 1;
+            firstChild[slot] = 1;
+            childStep[slot] = 0;
+        }
+        else {
+            childNum[slot] = 0;
+            firstChild[slot] = 0;
+            childStep[slot] = 0;
+        }
+    }
+
+    private void build(int st, int slot, int ctxId) {
+        setNode(st, slot, ctxId);
+        nodeStatus[slot] = NodeStatus.EC_STATE;
+        nodeValue[slot] = false;
+
+        int type = stType[st];
+        if (type == NodeType.UNIVERSAL_NODE || type == NodeType.EXISTENTIAL_NODE) {
+            ContextColumns columns = stColumns[st];
+            for (int i = 0; i < childNum[slot]; i++) {
+                build(stLeft[st], child(slot, i), ContextStore.getId(columns.getRow(i)));
+            }
+        }
+        else if (type == NodeType.AND_NODE || type == NodeType.IMPLIES_NODE) {
+            build(stLeft[st], child(slot, 0), -1);
+            build(stRight[st], child(slot, 1), -1);
+        }
+        else if (type == NodeType.NOT_NODE) {
+            build(stLeft[st], child(slot, 0), -1);
+        }
+    }
+
+    /**
+     * 将上一次排布中old位置的子树迁移到slot，变化的子树置为需要重算
+     * @return 子树是否需要重算
+     */
+    private boolean remap(int st, int slot, int old, int ctxId) {
+        if (old < 0) {
+            build(st, slot, ctxId);
+            return true;
+        }
+
+        int branchSize = stBranchSize[st];
+        if (!stChanged[st]) { //子树排布不变，整块拷贝
+            int from = old - branchSize + 1;
+            int to = slot - branchSize + 1;
+            System.arraycopy(prevNodeType, from, nodeType, to, branchSize);
+            System.arraycopy(prevNodeStatus, from, nodeStatus, to, branchSize);
+            System.arraycopy(prevNodeValue, from, nodeValue, to, branchSize);
+            System.arraycopy(prevContextId, from, contextId, to, branchSize);
+            System.arraycopy(prevFirstChild, from, firstChild, to, branchSize);
+            System.arraycopy(prevChildNum, from, childNum, to, branchSize);
+            System.arraycopy(prevChildStep, from, childStep, to, branchSize);
+            System.arraycopy(prevStIndex, from, stIndex, to, branchSize);
+            return false;
+        }
+
+        setNode(st, slot, ctxId);
+        nodeValue[slot] = prevNodeValue[old];
+
+        int type = stType[st];
+        if (type == NodeType.UNIVERSAL_NODE || type == NodeType.EXISTENTIAL_NODE) {
+            ContextColumns columns = stColumns[st];
+            int [] delta = patternDelta.get(stNodes[st].getContextSetName());
+            int oldNum = prevChildNum[old];
+            assert oldNum - delta[0] + delta[1] == childNum[slot]:"[DEBUG] Arena size error.";
+            for (int i = 0; i < childNum[slot]; i++) {
+                int j = i + delta[0];
+                int oldChild = j < oldNum ? prevChild(old, j) : -1;
+                remap(stLeft[st], child(slot, i), oldChild, ContextStore.getId(columns.getRow(i)));
+            }
+        }
+        else if (type == NodeType.AND_NODE || type == NodeType.IMPLIES_NODE) {
+            remap(stLeft[st], child(slot, 0), prevChild(old, 0), -1);
+            remap(stRight[st], child(slot, 1), prevChild(old, 1), -1);
+        }
+        else if (type == NodeType.NOT_NODE) {
+            remap(stLeft[st], child(slot, 0), prevChild(old, 0), -1);
+        }
+
+        nodeStatus[slot] = prevNodeStatus[old] == NodeStatus.EC_STATE ? NodeStatus.EC_STATE : NodeStatus.PC_STATE;
+        return true;
+    }
+
+    private int child(int slot, int i) {
+        return slot - firstChild[slot] + i * childStep[slot];
+    }
+
+    private int prevChild(int slot, int i) {
+        return slot - prevFirstChild[slot] + i * prevChildStep[slot];
+    }
+
+    /**
+     * 对CCT求值
+     * @param incremental 为true时按PCC方式只重算状态不为NC的结点
+     * @return 根结点的值
+     */
+    public boolean evaluation(boolean incremental) {
+        boolean changed = false;
+        for (String patternId : patternDelta.keySet()) {
+            changed = changed || isChanged(patternId);
+        }
+        if (!incremental || !laidOut) {
+            layout(false);
+        }
+        else if (changed) {
+            layout(true);
+        }
+        return eval(size - 1, 0);
+    }
+
+    private boolean eval(int slot, int depth) {
+        if (nodeStatus[slot] == NodeStatus.NC_STATE) {
+            return nodeValue[slot];
+        }
+
+        boolean value = false;
+        int st = stIndex[slot];
+        int num = childNum[slot];
+        switch (nodeType[slot]) {
+            case NodeType.UNIVERSAL_NODE: {
+                ContextColumns columns = stColumns[st];
+                value = true;
+                for (int i = 0; i < num; i++) {
+                    params[depth] = columns.getRow(i);
+                    value = eval(child(slot, i), depth + 1) && value;
+                }
+                break;
+            }
+            case NodeType.EXISTENTIAL_NODE: {
+                ContextColumns columns = stColumns[st];
+                value = false;
+                for (int i = 0; i < num; i++) {
+                    params[depth] = columns.getRow(i);
+                    value = eval(child(slot, i), depth + 1) || value;
+                }
+                break;
+            }
+            case NodeType.AND_NODE: {
+                boolean leftValue = eval(child(slot, 0), depth);
+                boolean rightValue = eval(child(slot, 1), depth);
+                value = leftValue && rightValue;
+                break;
+            }
+            case NodeType.IMPLIES_NODE: {
+                boolean leftValue = eval(child(slot, 0), depth);
+                boolean rightValue = eval(child(slot, 1), depth);
+                value = !leftValue || rightValue;
+                break;
+            }
+            case NodeType.NOT_NODE: {
+                value = !eval(child(slot, 0), depth);
+                break;
+            }
+            default: {
+                assert depth >= 1:"[DEBUG] Param error";
+                value = BFuncHelper.bfun(stNodes[st].getFuncType(), params[depth - 1], params[depth >= 2 ? depth - 2 : depth - 1]);
+                break;
+            }
+        }
+
+        nodeValue[slot] = value;
+        nodeStatus[slot] = NodeStatus.NC_STATE;
+        return value;
+    }
+
+    /**
+     * 根据已求得的结点值生成根结点的link，只访问对根结点link有贡献的子树
+     * @return
+     */
+    public Links getLink() {
+        return link(size - 1, 0);
+    }
+
+    private Links link(int slot, int depth) {
+        int num = childNum[slot];
+        if (num == 0) {
+            return LinkSet.of(LinkHelper.pack(depth >= 1 ? ContextStore.getId(params[0]) : -1, depth >= 2 ? ContextStore.getId(params[1]) : -1));
+        }
+
+        boolean value = nodeValue[slot];
+        int type = nodeType[slot];
+        if (type == NodeType.NOT_NODE) {
+            return link(child(slot, 0), depth);
+        }
+        else if (type == NodeType.AND_NODE) {
+            int left = child(slot, 0);
+            int right = child(slot, 1);
+            if (nodeValue[left] && !nodeValue[right]) {
+                return link(right, depth);
+            }
+            else if (!nodeValue[left] && nodeValue[right]) {
+                return link(left, depth);
+            }
+            return LinkHelper.linkCartesian(link(left, depth), link(right, depth));
+        }
+        else if (type == NodeType.IMPLIES_NODE) {
+            if (value) {
+                return LinkHelper.linkCartesian(link(child(slot, 0), depth), link(child(slot, 1), depth));
+            }
+            return link(child(slot, 1), depth);
+        }
+        else {
+            //全称量词取违反（为真时取全部）子结点，存在量词取满足（为假时取全部）子结点
+            boolean all = type == NodeType.UNIVERSAL_NODE ? value : !value;
+            ContextColumns columns = stColumns[stIndex[slot]];
+            LinkSet link = new LinkSet();
+            for (int i = 0; i < num; i++) {
+                int c = child(slot, i);
+                if (all || nodeValue[c] == value) {
+                    params[depth] = columns.getRow(i);
+                    link.addAll(link(c, depth + 1));
+                }
+            }
+            return link;
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
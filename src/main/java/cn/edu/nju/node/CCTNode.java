@@ -1,6 +1,11 @@
 package cn.edu.nju.node;
 
 import cn.edu.nju.context.Context;
+import cn.edu.nju.context.ContextStore;
+import cn.edu.nju.util.Links;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Created by njucjc on 2017/10/3.
@@ -10,33 +15,61 @@ public class CCTNode extends TreeNode implements NodeType, NodeStatus{
     /* Subtree value */
     private boolean nodeValue;
 
-    /* Context assignment */
-    private Context context;
+    /* Context assignment：context在ContextStore中的行号，-1表示没有 */
+    private int contextRow;
 
     /* Tree node state */
     private int nodeStatus;
 
     private int nodeType;
 
-    private String link;
+    private int funcType = -1; //bfunction的操作码，来自对应的语法树结点
+
+    private String contextSetName; //量词结点遍历的pattern，来自对应的语法树结点
+
+    private Links link;
+
+    /* 计数求值时量词结点的关键子结点数：全称量词为取值为假的子结点，存在量词为取值为真的子结点（witness） */
+    private int markedCount = 0;
+
+    /* 计数求值时本结点是否为父结点的关键子结点 */
+    private boolean marked = false;
+
+    /* 计数求值时量词结点上次求值后发生变化的子结点 */
+    private Set<CCTNode> dirtyChildren;
+
+    /* 需要保存link的取值：第0位为结点取值为假时，第1位为取值为真时（linkTracking=violation时由语法树的极性分析得到） */
+    private int linkMask = 3;
+
+    /* 子树已被换出（cctBudget），只保留本结点的值和link，需要时由pattern重新展开 */
+    private boolean evicted = false;
+
+    /* 量词结点只为满足索引约束（same或距离类bfunction）的context创建子结点，其余context的子结点取值固定 */
+    private boolean indexed = false;
 
 
     public CCTNode(String nodeName, int nodeType, Context context) {
             super(nodeName);
         this.nodeValue = false;
-        this.context = context;
+        this.contextRow = context == null ? -1 : context.getRow();
         this.nodeStatus = CCTNode.EC_STATE;
         this.nodeType = nodeType;
-        this.link = "";
+        this.link = null;
+        if (nodeType == CCTNode.UNIVERSAL_NODE || nodeType == CCTNode.EXISTENTIAL_NODE) {
+            setChildTreeNodes(new ChildDeque<>()); //过期子结点从队首删除
+        }
     }
 
     public CCTNode(String nodeName, int nodeType) {
         super(nodeName);
         this.nodeValue = false;
-        this.context = null;
+        this.contextRow = -1;
         this.nodeStatus = CCTNode.EC_STATE;
         this.nodeType = nodeType;
-        this.link = "";
+        this.link = null;
+        if (nodeType == CCTNode.UNIVERSAL_NODE || nodeType == CCTNode.EXISTENTIAL_NODE) {
+            setChildTreeNodes(new ChildDeque<>()); //过期子结点从队首删除
+        }
     }
 
     public boolean getNodeValue() {
@@ -44,7 +77,11 @@ public class CCTNode extends TreeNode implements NodeType, NodeStatus{
     }
 
     public Context getContext() {
-        return context;
+        return contextRow == -1 ? null : ContextStore.get(contextRow);
+    }
+
+    public int getContextRow() {
+        return contextRow;
     }
 
     public void setNodeValue(boolean nodeValue) {
@@ -52,17 +89,104 @@ public class CCTNode extends TreeNode implements NodeType, NodeStatus{
     }
 
     public void setContext(Context context) {
-        this.context = context;
+        this.contextRow = context == null ? -1 : context.getRow();
     }
 
-    public String getLink() {
+    public int getFuncType() {
+        return funcType;
+    }
+
+    public void setFuncType(int funcType) {
+        this.funcType = funcType;
+    }
+
+    public String getContextSetName() {
+        return contextSetName;
+    }
+
+    public void setContextSetName(String contextSetName) {
+        this.contextSetName = contextSetName;
+    }
+
+    public Links getLink() {
         return link;
     }
 
-    public void setLink(String link) {
+    public void setLink(Links link) {
         this.link = link;
     }
 
+    public int getMarkedCount() {
+        return markedCount;
+    }
+
+    public boolean isMarked() {
+        return marked;
+    }
+
+    /**
+     * 更新子结点是否为关键子结点，同时维护关键子结点数
+     * @param child
+     * @param marked
+     */
+    public void markChild(CCTNode child, boolean marked) {
+        if (child.marked != marked) {
+            child.marked = marked;
+            markedCount += marked ? 1 : -1;
+        }
+    }
+
+    public Set<CCTNode> getDirtyChildren() {
+        if (dirtyChildren == null) {
+            dirtyChildren = new LinkedHashSet<>();
+        }
+        return dirtyChildren;
+    }
+
+    public void addDirtyChild(CCTNode child) {
+        getDirtyChildren().add(child);
+    }
+
+    /**
+     * 子结点被删除时清除其计数信息
+     * @param child
+     */
+    public void forgetChild(CCTNode child) {
+        markChild(child, false);
+        if (dirtyChildren != null) {
+            dirtyChildren.remove(child);
+        }
+    }
+
+    public void setLinkMask(int linkMask) {
+        this.linkMask = linkMask;
+    }
+
+    /**
+     * 结点取值为value时，其link是否可能出现在根结点的violated link中
+     * @param value
+     * @return
+     */
+    public boolean needsLink(boolean value) {
+        return (linkMask & (value ? 2 : 1)) != 0;
+    }
+
+    public boolean isEvicted() {
+        return evicted;
+    }
+
+    public void setEvicted(boolean evicted) {
+        this.evicted = evicted;
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
     @Override
     public int getNodeStatus() {
         return nodeStatus;
@@ -0,0 +1,183 @@
+package cn.edu.nju.node;
+
+import cn.edu.nju.pattern.Pattern;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * GAIN的语法树展开方式：语法树按c-unit重排序（前序遍历，右子树在前），
+ * 每个c-unit的所有c-copy在展开后的CCT中按branchSize计算偏移，由内层c-unit到外层逐层求值。
+ * 假定and/implies结点的子树中没有量词，因此同一c-unit中的结点在展开后的CCT中连续存放
+ */
+public class CUnitLayout {
+    private final int stSize;
+
+    private final int [] branchSize;
+
+    private final STNode [] constraintNodes; //(an array for storing a reordered syntax tree)
+
+    private final List<Integer> cunits; //an array for storing the start of each c-unit
+
+    private final Map<String, Pattern> patternMap;
+
+    public CUnitLayout(STNode stRoot, Map<String, Pattern> patternMap) {
+        this.patternMap = patternMap;
+        this.stSize = computeSTSize(stRoot);
+        this.branchSize = new int[this.stSize];
+
+        //计算cunit以及为语法树重排序(前序遍历)
+        this.constraintNodes = new STNode[this.stSize];
+        this.cunits = new ArrayList<>();
+        split(stRoot);
+        this.cunits.add(-1);
+    }
+
+    /**
+     * 语法树能否按c-unit展开：and/implies结点的子树中不能有量词
+     * @param root
+     * @return
+     */
+    public static boolean isFlattenable(STNode root) {
+        return isFlattenable(root, false);
+    }
+
+    private static boolean isFlattenable(STNode root, boolean underBinary) {
+        int type = root.getNodeType();
+        if (underBinary && (type == STNode.UNIVERSAL_NODE || type == STNode.EXISTENTIAL_NODE)) {
+            return false;
+        }
+        boolean binary = underBinary || type == STNode.AND_NODE || type == STNode.IMPLIES_NODE;
+        for (TreeNode child : root.getChildTreeNodes()) {
+            if (!isFlattenable((STNode) child, binary)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getSTSize() {
+        return stSize;
+    }
+
+    public int [] getBranchSize() {
+        return branchSize;
+    }
+
+    public STNode [] getConstraintNodes() {
+        return constraintNodes;
+    }
+
+    public List<Integer> getCunits() {
+        return cunits;
+    }
+
+    private int computeSTSize(STNode root) {
+        if(root == null) {
+            return 0;
+        }
+        int type = root.getNodeType();
+        if(type == STNode.UNIVERSAL_NODE || type == NodeType.EXISTENTIAL_NODE || type == STNode.NOT_NODE) {
+            return 1 + computeSTSize((STNode) root.getFirstChild());
+        }
+        else if(type == STNode.AND_NODE || type == STNode.IMPLIES_NODE) { //not support 'OR' node type
+            return 1 + computeSTSize((STNode) root.getFirstChild()) + computeSTSize((STNode) root.getLastChild());
+        }
+        else if(type == STNode.BFUNC_NODE) {
+            return 1;
+        }
+        else {
+            assert false:"Node type error, type:  " +  type;
+            return 0;
+        }
+
+    }
+
+    private void split(STNode root) {
+        Queue<STNode> rootOfCunit = new LinkedList<>();
+        rootOfCunit.offer(root);
+        int [] currentNodeNum = new int[1];
+        currentNodeNum[0] = this.stSize - 1;
+        while(!rootOfCunit.isEmpty()) {
+            STNode rootOfNextCunit = rootOfCunit.poll();
+            cunits.add(currentNodeNum[0]);
+            parseCunit(rootOfCunit, rootOfNextCunit, currentNodeNum);
+        }
+    }
+
+    private void parseCunit(Queue<STNode> rootOfCunit, STNode node,int []currentNodeNum) {
+        //假定非全称/存在量词的子树中不会有全称/存在量词节点
+        if(node == null) {
+            return ;
+        }
+        node.setNodeNum(currentNodeNum[0]);
+        constraintNodes[currentNodeNum[0]] = node;
+        currentNodeNum[0]--;
+        int type = node.getNodeType();
+        if (type == STNode.UNIVERSAL_NODE || type == STNode.EXISTENTIAL_NODE) {
+            rootOfCunit.offer((STNode) node.getFirstChild());
+        }
+        else if(type == STNode.IMPLIES_NODE || type == STNode.AND_NODE){
+            parseCunit(rootOfCunit, (STNode) node.getLastChild(), currentNodeNum);
+            parseCunit(rootOfCunit, (STNode) node.getFirstChild(), currentNodeNum);
+        }
+        else if(type == STNode.NOT_NODE) {
+            parseCunit(rootOfCunit, (STNode) node.getFirstChild(), currentNodeNum);
+        }
+        else if(type == STNode.BFUNC_NODE) {
+            return;
+        }
+    }
+
+    /**
+     * c-unit的c-copy个数，即其外层各量词pattern大小之积
+     * @param cunit c-unit根结点的编号
+     * @return
+     */
+    public int computeCCopyNum(int cunit) {
+        STNode node = (STNode)constraintNodes[cunit].getParentTreeNode();
+        int ccopyNum = 1;
+        while(node != null) {
+            int type = node.getNodeType();
+            if(type == STNode.UNIVERSAL_NODE || type == STNode.EXISTENTIAL_NODE) {
+                ccopyNum *= patternMap.get(node.getContextSetName()).getContextList().size();
+            }
+            node = (STNode) node.getParentTreeNode();
+        }
+        return ccopyNum;
+    }
+
+    /**
+     * 根据当前pattern大小计算每个语法树结点对应的CCT子树大小
+     * @return 展开后的CCT大小
+     */
+    public int computeBranchSize() {
+        return computeRTTBranchSize(constraintNodes[stSize - 1]);
+    }
+
+    private int computeRTTBranchSize(STNode root) {
+        assert root != null:"root is null.";
+        int type = root.getNodeType();
+        int size = 0;
+        if(type == STNode.UNIVERSAL_NODE || type == STNode.EXISTENTIAL_NODE) {
+            size = 1 + patternMap.get(root.getContextSetName()).getContextList().size() * computeRTTBranchSize((STNode) root.getFirstChild());
+        }
+        else if(type == STNode.NOT_NODE) {
+            size = 1 + computeRTTBranchSize((STNode)root.getFirstChild());
+        }
+        else if(type == STNode.AND_NODE || type == STNode.IMPLIES_NODE) {
+            size = 1 + computeRTTBranchSize((STNode)root.getFirstChild()) + computeRTTBranchSize((STNode)root.getLastChild());
+        }
+        else if(type == STNode.BFUNC_NODE){
+            size = 1;
+        }
+        else {
+            assert false:"Type error.";
+        }
+        branchSize[root.getNodeNum()] = size;
+        return size;
+    }
+}
@@ -0,0 +1,126 @@
+package cn.edu.nju.node;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * 量词结点的子结点容器，以环形数组实现：
+ * 新增context对应的子结点追加到队尾，过期子结点总是从队首批量删除，同时支持按下标随机访问（CheckTask按区间划分）
+ * @param <E>
+ */
+public class ChildDeque<E> extends AbstractList<E> implements RandomAccess {
+    private Object [] elements;
+
+    private int head;
+
+    private int size;
+
+    public ChildDeque() {
+        this(16);
+    }
+
+    public ChildDeque(int capacity) {
+        int n = 1;
+        while (n < capacity) {
+            n <<= 1;
+        }
+        this.elements = new Object[n];
+        this.head = 0;
+        this.size = 0;
+    }
+
+    private int index(int i) {
+        return (head + i) & (elements.length - 1);
+    }
+
+    private void rangeCheck(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+    }
+
+    private void grow() {
+        Object [] newElements = new Object[elements.length << 1];
+        for (int i = 0; i < size; i++) {
+            newElements[i] = elements[index(i)];
+        }
+        elements = newElements;
+        head = 0;
+    }
+
+    @Override
+    public boolean add(E e) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[index(size)] = e;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int i) {
+        rangeCheck(i);
+        return (E) elements[index(i)];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int i, E e) {
+        rangeCheck(i);
+        E old = (E) elements[index(i)];
+        elements[index(i)] = e;
+        return old;
+    }
+
+    /**
+     * 删除任意位置的子结点，需要移动其后的元素
+     * @param i
+     * @return
+     */
+    @Override
+    public E remove(int i) {
+        E old = get(i);
+        if (i == 0) {
+            removeFirst(1);
+            return old;
+        }
+        for (int j = i; j < size - 1; j++) {
+            elements[index(j)] = elements[index(j + 1)];
+        }
+        elements[index(size - 1)] = null;
+        size--;
+        modCount++;
+        return old;
+    }
+
+    /**
+     * 删除队首的k个子结点
+     * @param k
+     */
+    public void removeFirst(int k) {
+        assert k <= size:"[DEBUG] Remove too many children: " + k;
+        for (int i = 0; i < k; i++) {
+            elements[index(i)] = null;
+        }
+        head = index(k);
+        size -= k;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, null);
+        head = 0;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
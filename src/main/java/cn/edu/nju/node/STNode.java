@@ -10,6 +10,8 @@ public class STNode extends TreeNode implements NodeType{
 
     private int nodeNum = 0;
 
+    private int funcType = -1; //bfunction的操作码（NodeType.SAME等），解析rule时确定
+
     public STNode(String nodeName, int nodeType) {
         super(nodeName);
         this.nodeType = nodeType;
@@ -43,6 +45,14 @@ public class STNode extends TreeNode implements NodeType{
         return nodeType;
     }
 
+    public int getFuncType() {
+        return funcType;
+    }
+
+    public void setFuncType(int funcType) {
+        this.funcType = funcType;
+    }
+
     public int getNodeNum() {
         return nodeNum;
     }
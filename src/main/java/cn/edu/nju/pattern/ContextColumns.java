@@ -0,0 +1,89 @@
+package cn.edu.nju.pattern;
+
+import cn.edu.nju.context.Context;
+import cn.edu.nju.context.ContextStore;
+
+/**
+ * 窗口快照的列式视图：context以ContextStore中的行号存放，经度、纬度、速度分别复制到与环形缓冲区对齐的double数组中，
+ * 第i个context位于各数组的physical(i)处，区间[i, i + n)至多分为两段连续存放（见run）。
+ * 与ContextWindow的快照一样只读，写线程追加的context数不超过剩余容量前保持有效
+ */
+public class ContextColumns {
+    private final int [] rows;
+
+    private final double [] longitudes;
+
+    private final double [] latitudes;
+
+    private final double [] speeds;
+
+    private final int head;
+
+    private final int size;
+
+    ContextColumns(int [] rows, double [] longitudes, double [] latitudes, double [] speeds, int head, int size) {
+        this.rows = rows;
+        this.longitudes = longitudes;
+        this.latitudes = latitudes;
+        this.speeds = speeds;
+        this.head = head;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Context get(int i) {
+        return ContextStore.get(rows[physical(i)]);
+    }
+
+    /**
+     * 第i个context在ContextStore中的行号
+     * @param i
+     * @return
+     */
+    public int getRow(int i) {
+        return rows[physical(i)];
+    }
+
+    /**
+     * 第i个context的时间，直接读取ContextStore的列
+     * @param i
+     * @return
+     */
+    public long getTime(int i) {
+        return ContextStore.getTime(rows[physical(i)]);
+    }
+
+    /**
+     * 第i个context在列数组中的下标
+     * @param i
+     * @return
+     */
+    public int physical(int i) {
+        return (head + i) & (rows.length - 1);
+    }
+
+    /**
+     * 从第i个context开始、不跨越数组末尾的最长连续段长度（不超过num）
+     * @param i
+     * @param num
+     * @return
+     */
+    public int run(int i, int num) {
+        return Math.min(num, rows.length - physical(i));
+    }
+
+    public double [] getLongitudes() {
+        return longitudes;
+    }
+
+    public double [] getLatitudes() {
+        return latitudes;
+    }
+
+    public double [] getSpeeds() {
+        return speeds;
+    }
+}
@@ -0,0 +1,180 @@
+package cn.edu.nju.pattern;
+
+import cn.edu.nju.context.Context;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * pattern的context窗口：按时间戳有序的环形缓冲区。
+ * 新context追加到队尾，过期context位于队首，通过二分查找确定过期个数后整体删除。
+ * 只允许一个写线程（由Pattern的同步方法保证），每次修改后发布一个不可变快照，
+ * 读线程（如Con-C的检测线程）直接读取快照而无需复制。
+ * 被删除的位置不立即清空，快照在写线程追加的context数不超过剩余容量前保持有效，扩容时旧快照继续引用旧数组。
+ * 缓冲区中只保存context在ContextStore中的行号，经度、纬度、速度另按列复制到与环形缓冲区对齐的数组中，
+ * 供bfunction批量计算（见ContextColumns）。
+ */
+public class ContextWindow {
+    private int [] rows; //context在ContextStore中的行号
+
+    private double [] longitudes;
+
+    private double [] latitudes;
+
+    private double [] speeds;
+
+    private int head;
+
+    private int size;
+
+    private long headSequence; //队首context的序号，每个context加入时按顺序编号
+
+    private volatile Snapshot snapshot;
+
+    public ContextWindow() {
+        this(16);
+    }
+
+    public ContextWindow(int capacity) {
+        int n = 1;
+        while (n < capacity) {
+            n <<= 1;
+        }
+        this.rows = new int[n];
+        this.longitudes = new double[n];
+        this.latitudes = new double[n];
+        this.speeds = new double[n];
+        this.head = 0;
+        this.size = 0;
+        this.headSequence = 0;
+        publish();
+    }
+
+    private void publish() {
+        snapshot = new Snapshot(new ContextColumns(rows, longitudes, latitudes, speeds, head, size));
+    }
+
+    /**
+     * 追加一个context
+     * @param context
+     * @return context的序号
+     */
+    public long add(Context context) {
+        if (size == rows.length) {
+            int n = rows.length << 1;
+            int [] newRows = new int[n];
+            double [] newLongitudes = new double[n];
+            double [] newLatitudes = new double[n];
+            double [] newSpeeds = new double[n];
+            for (int i = 0; i < size; i++) {
+                int j = (head + i) & (rows.length - 1);
+                newRows[i] = rows[j];
+                newLongitudes[i] = longitudes[j];
+                newLatitudes[i] = latitudes[j];
+                newSpeeds[i] = speeds[j];
+            }
+            rows = newRows;
+            longitudes = newLongitudes;
+            latitudes = newLatitudes;
+            speeds = newSpeeds;
+            head = 0;
+        }
+        int tail = (head + size) & (rows.length - 1);
+        longitudes[tail] = context.getLongitude();
+        latitudes[tail] = context.getLatitude();
+        speeds[tail] = context.getSpeed();
+        rows[tail] = context.getRow();
+        size++;
+        publish();
+        return headSequence + size - 1;
+    }
+
+    /**
+     * 二分查找到time时刻已过期的context个数
+     * @param time 毫秒数
+     * @param freshness
+     * @param inclusive 时间差等于freshness是否视为过期
+     * @return
+     */
+    public int countExpired(long time, long freshness, boolean inclusive) {
+        ContextColumns contexts = snapshot.columns; //读线程也可调用
+        int low = 0;
+        int high = contexts.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long diff = Math.abs(time - contexts.getTime(mid));
+            if (inclusive ? diff >= freshness : diff > freshness) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 删除队首的num个context
+     * @param num
+     */
+    public void removeFirst(int num) {
+        assert num <= size:"[DEBUG] Remove too many contexts: " + num;
+        if (num == 0) {
+            return;
+        }
+        head = (head + num) & (rows.length - 1);
+        size -= num;
+        headSequence += num;
+        publish();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 队首context的序号，序号为seq的context位于窗口的seq - getHeadSequence()处
+     * @return
+     */
+    public long getHeadSequence() {
+        return headSequence;
+    }
+
+    /**
+     * 当前窗口的只读快照
+     * @return
+     */
+    public List<Context> snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 当前窗口快照的列式视图，与snapshot()返回的快照一一对应
+     * @return
+     */
+    public ContextColumns columns() {
+        return snapshot.columns;
+    }
+
+    private static class Snapshot extends AbstractList<Context> implements RandomAccess {
+        private final ContextColumns columns;
+
+        Snapshot(ContextColumns columns) {
+            this.columns = columns;
+        }
+
+        @Override
+        public Context get(int i) {
+            if (i < 0 || i >= columns.size()) {
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + columns.size());
+            }
+            return columns.get(i);
+        }
+
+        @Override
+        public int size() {
+            return columns.size();
+        }
+    }
+}
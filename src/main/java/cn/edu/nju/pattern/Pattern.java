@@ -1,9 +1,10 @@
 package cn.edu.nju.pattern;
+import cn.edu.nju.bfunc.BFuncCache;
 import cn.edu.nju.context.Context;
-import cn.edu.nju.util.TimestampHelper;
+import cn.edu.nju.context.ContextStore;
 
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by njucjc on 2017/10/23.
@@ -17,7 +18,13 @@ public class Pattern {
     private String object;
     private String site;
 
-    private List<Context> contextList;
+    private ContextWindow contextWindow;
+
+    /* 距离阈值 -> 网格索引，第一次使用时创建 */
+    private Map<Double, SpatialGrid> grids = new ConcurrentHashMap<>();
+
+    /* 车牌号索引，第一次使用时创建 */
+    private volatile PlateIndex plateIndex;
 
     public Pattern(String id,
                    long freshness,
@@ -34,7 +41,7 @@ public class Pattern {
         this.object = object;
         this.site = site;
 
-        this.contextList = new CopyOnWriteArrayList<>();
+        this.contextWindow = new ContextWindow();
     }
 
     public long getFreshness() {
@@ -89,8 +96,68 @@ public class Pattern {
         this.site = site;
     }
 
+    /**
+     * 返回当前context集合的只读快照
+     * @return
+     */
     public List<Context> getContextList() {
-        return contextList;
+        return contextWindow.snapshot();
+    }
+
+    /**
+     * 返回当前context集合的列式视图
+     * @return
+     */
+    public ContextColumns getColumns() {
+        return contextWindow.columns();
+    }
+
+    /**
+     * 获取距离阈值threshold对应的网格索引，在检测时调用（此时没有写线程）
+     * @param threshold
+     * @return
+     */
+    public SpatialGrid getGrid(double threshold) {
+        return grids.computeIfAbsent(threshold, k -> {
+            SpatialGrid grid = new SpatialGrid(threshold);
+            List<Context> contextList = contextWindow.snapshot();
+            long headSeq = contextWindow.getHeadSequence();
+            for (int i = 0; i < contextList.size(); i++) {
+                grid.add(contextList.get(i), headSeq + i);
+            }
+            return grid;
+        });
+    }
+
+    /**
+     * 获取车牌号索引，在检测时调用（此时没有写线程）
+     * @return
+     */
+    public PlateIndex getPlateIndex() {
+        PlateIndex index = plateIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = plateIndex;
+                if (index == null) {
+                    index = new PlateIndex();
+                    List<Context> contextList = contextWindow.snapshot();
+                    long headSeq = contextWindow.getHeadSequence();
+                    for (int i = 0; i < contextList.size(); i++) {
+                        index.add(contextList.get(i), headSeq + i);
+                    }
+                    plateIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 窗口中第一个context的序号
+     * @return
+     */
+    public long getHeadSequence() {
+        return contextWindow.getHeadSequence();
     }
 
     /**
@@ -145,42 +212,55 @@ public class Pattern {
         if(!isBelong(context)) {
             return false;
         }
-        contextList.add(context);
+        long seq = contextWindow.add(context);
+        ContextStore.retain(context);
+        if (contextWindow.size() == 1 && BFuncCache.isEnabled()) {
+            BFuncCache.expire(id, context.getId());
+        }
+        for (SpatialGrid grid : grids.values()) {
+            grid.add(context, seq);
+        }
+        if (plateIndex != null) {
+            plateIndex.add(context, seq);
+        }
         return true;
     }
 
     /**
-     * 若第一个context的过期时间为timestamp则删除
-     * @param timestamp 时间戳
+     * 删除到time时刻已过期的context
+     * @param time 毫秒数
      */
-    public synchronized boolean deleteFirstByTime(String timestamp) {
-        boolean isDel = false;
-        for (Context context : contextList) {
-            if(TimestampHelper.timestampDiff(context.getTimestamp(), timestamp) >= freshness) {
-                isDel = true;
-                contextList.remove(context);
+    public synchronized boolean deleteFirstByTime(long time) {
+        int num = contextWindow.countExpired(time, freshness, true);
+        List<Context> contextList = contextWindow.snapshot();
+        long headSeq = contextWindow.getHeadSequence();
+        for (int i = 0; i < num; i++) {
+            for (SpatialGrid grid : grids.values()) {
+                grid.remove(contextList.get(i), headSeq + i);
             }
-            else {
-                break;
+            if (plateIndex != null) {
+                plateIndex.remove(contextList.get(i), headSeq + i);
             }
+            ContextStore.release(contextList.get(i));
+        }
+        if (num > 0 && BFuncCache.isEnabled()) { //新的队首
+            BFuncCache.expire(id, num < contextList.size() ? contextList.get(num).getId() : -1);
         }
-        return isDel;
+        contextWindow.removeFirst(num);
+        return num > 0;
     }
 
     /**
-     * 获取到timestamp时刻，已经过时的context，并返回它们的过时时刻
-     * @param timestamp
+     * 获取到time时刻，已经过时的context，并返回它们的过时时刻（毫秒数）
+     * @param time
      * @return
      */
-    public Set<String> getOutOfDateTimes(String timestamp) {
-        Set<String> timeSet = new HashSet<>();
-        for(Context context : contextList) {
-            if(TimestampHelper.timestampDiff(context.getTimestamp(), timestamp) > freshness) {
-                timeSet.add(TimestampHelper.plusMillis(context.getTimestamp(), freshness));
-            }
-            else {//找到第一个还未过期的context即可结束遍历
-                break;
-            }
+    public Set<Long> getOutOfDateTimes(long time) {
+        Set<Long> timeSet = new HashSet<>();
+        List<Context> contextList = contextWindow.snapshot();
+        int num = contextWindow.countExpired(time, freshness, false); //过期的context位于队首
+        for(int i = 0; i < num; i++) {
+            timeSet.add(contextList.get(i).getTime() + freshness);
         }
         return timeSet;
     }
@@ -0,0 +1,27 @@
+package cn.edu.nju.pattern;
+
+import cn.edu.nju.context.Context;
+
+/**
+ * pattern中context按车牌号编码的哈希索引，用于same：只有同一辆车的context才可能满足same
+ */
+public class PlateIndex {
+    private final SequenceBuckets<Integer> plates = new SequenceBuckets<>();
+
+    public void add(Context context, long seq) {
+        plates.add(context.getPlateId(), seq);
+    }
+
+    public void remove(Context context, long seq) {
+        plates.remove(context.getPlateId(), seq);
+    }
+
+    /**
+     * 将与context同一辆车的所有context的序号按窗口顺序加入result
+     * @param context
+     * @param result
+     */
+    public void partners(Context context, SequenceList result) {
+        plates.collect(context.getPlateId(), result);
+    }
+}
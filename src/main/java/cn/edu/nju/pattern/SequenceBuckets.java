@@ -0,0 +1,77 @@
+package cn.edu.nju.pattern;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * pattern二级索引的公共部分：每个键对应一个按时间顺序保存context序号的队列，
+ * context与窗口一样从队首过期
+ * @param <K>
+ */
+class SequenceBuckets<K> {
+    private final Map<K, Bucket> buckets = new HashMap<>();
+
+    void add(K key, long seq) {
+        buckets.computeIfAbsent(key, k -> new Bucket()).addLast(seq);
+    }
+
+    /**
+     * 删除一个过期的context，必须按加入顺序删除
+     * @param key
+     * @param seq
+     */
+    void remove(K key, long seq) {
+        Bucket bucket = buckets.get(key);
+        assert bucket != null && bucket.first() == seq:"[DEBUG] Index out of order: " + seq;
+        bucket.removeFirst();
+        if (bucket.size == 0) {
+            buckets.remove(key);
+        }
+    }
+
+    /**
+     * 将key对应的所有序号加入result
+     * @param key
+     * @param result
+     */
+    void collect(K key, SequenceList result) {
+        Bucket bucket = buckets.get(key);
+        if (bucket != null) {
+            for (int i = 0; i < bucket.size; i++) {
+                result.add(bucket.seqs[(bucket.head + i) & (bucket.seqs.length - 1)]);
+            }
+        }
+    }
+
+    /**
+     * 以环形long数组保存的序号队列，容量为2的幂
+     */
+    private static class Bucket {
+        private long [] seqs = new long[4];
+
+        private int head = 0;
+
+        private int size = 0;
+
+        void addLast(long seq) {
+            if (size == seqs.length) {
+                long [] newSeqs = new long[size << 1];
+                for (int i = 0; i < size; i++) {
+                    newSeqs[i] = seqs[(head + i) & (seqs.length - 1)];
+                }
+                seqs = newSeqs;
+                head = 0;
+            }
+            seqs[(head + size++) & (seqs.length - 1)] = seq;
+        }
+
+        long first() {
+            return seqs[head];
+        }
+
+        void removeFirst() {
+            head = (head + 1) & (seqs.length - 1);
+            size--;
+        }
+    }
+}
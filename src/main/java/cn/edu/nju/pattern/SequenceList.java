@@ -0,0 +1,38 @@
+package cn.edu.nju.pattern;
+
+import java.util.Arrays;
+
+/**
+ * context序号的列表，以long数组保存，用于从pattern索引中取出候选context
+ */
+public class SequenceList {
+    private long [] seqs = new long[16];
+
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public long get(int i) {
+        return seqs[i];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    void add(long seq) {
+        if (size == seqs.length) {
+            seqs = Arrays.copyOf(seqs, size * 2);
+        }
+        seqs[size++] = seq;
+    }
+
+    /**
+     * 按序号（即窗口顺序）排序
+     */
+    public void sort() {
+        Arrays.sort(seqs, 0, size);
+    }
+}
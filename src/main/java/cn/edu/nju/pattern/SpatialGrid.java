@@ -0,0 +1,58 @@
+package cn.edu.nju.pattern;
+
+import cn.edu.nju.context.Context;
+
+/**
+ * pattern中context的均匀网格索引（按经纬度划分），用于距离类bfunction。
+ * 格子边长略大于距离阈值，因此不在相邻格子中的两个context距离一定超过阈值。
+ */
+public class SpatialGrid {
+    private final double cellSize;
+
+    private final SequenceBuckets<Long> cells = new SequenceBuckets<>();
+
+    public SpatialGrid(double threshold) {
+        this.cellSize = threshold * (1 + 1e-6); //留出浮点误差的余量
+    }
+
+    private long cellOf(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    private int indexOf(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    /**
+     * 加入一个context
+     * @param context
+     * @param seq context在窗口中的序号
+     */
+    public void add(Context context, long seq) {
+        cells.add(cellOf(indexOf(context.getLongitude()), indexOf(context.getLatitude())), seq);
+    }
+
+    /**
+     * 删除一个过期的context，必须按加入顺序删除
+     * @param context
+     * @param seq
+     */
+    public void remove(Context context, long seq) {
+        cells.remove(cellOf(indexOf(context.getLongitude()), indexOf(context.getLatitude())), seq);
+    }
+
+    /**
+     * 将与context所在格子相邻（含自身）的格子中所有context的序号加入result，按格子分段，需要时由调用者排序
+     * @param context
+     * @param result
+     */
+    public void neighbors(Context context, SequenceList result) {
+        int x = indexOf(context.getLongitude());
+        int y = indexOf(context.getLatitude());
+        for (int i = x - 1; i <= x + 1; i++) {
+            for (int j = y - 1; j <= y + 1; j++) {
+                cells.collect(cellOf(i, j), result);
+            }
+        }
+    }
+}
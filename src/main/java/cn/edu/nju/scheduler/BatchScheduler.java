@@ -13,17 +13,17 @@ public class BatchScheduler implements Scheduler{
     }
 
     @Override
-    public void update(String change) {
+    public synchronized void update(String change) {
         count = (count + 1) % batch;
     }
 
     @Override
-    public boolean schedule(String ruleName) {
+    public synchronized boolean schedule(String ruleName) {
         return count == 0;
     }
 
     @Override
-    public void reset() {
+    public synchronized void reset() {
         count = 0;
     }
 
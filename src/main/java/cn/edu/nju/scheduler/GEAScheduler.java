@@ -19,8 +19,6 @@ public class GEAScheduler implements Scheduler{
 
     protected ContextParser parser = new ContextParser();
 
-    private List<Context> contextList;
-
     private Map<String, int []> winSizeMap;
 
 
@@ -28,7 +26,6 @@ public class GEAScheduler implements Scheduler{
         this.checkerList = checkerList;
         this.scheduleMap = new HashMap<>();
         this.currentBatchMap = new HashMap<>();
-        this.contextList = new ArrayList<>();
         this.winSizeMap = new HashMap<>();
 
 
@@ -42,7 +39,7 @@ public class GEAScheduler implements Scheduler{
     }
 
     @Override
-    public void update(String change) {
+    public synchronized void update(String change) {
 
         for(Checker checker : checkerList) {
             if (matching(checker, change)) {
@@ -52,7 +49,7 @@ public class GEAScheduler implements Scheduler{
     }
 
     @Override
-    public boolean schedule(String ruleName) {
+    public synchronized boolean schedule(String ruleName) {
         boolean result = scheduleMap.get(ruleName);
         if(result) {
             scheduleMap.put(ruleName, false);
@@ -72,7 +69,6 @@ public class GEAScheduler implements Scheduler{
         boolean result = sCondition(checker, currentBatch, elements);
 
         Context context = parser.parseChangeContext(elements);
-        contextList.add(context);
 
         List<Boolean> subTree = calcSubTree(checker, elements[1], context);
 
@@ -128,7 +124,7 @@ public class GEAScheduler implements Scheduler{
     }
 
     @Override
-    public void reset() {
+    public synchronized void reset() {
         for(String key : scheduleMap.keySet()) {
             scheduleMap.put(key, true);
         }
@@ -1,5 +1,6 @@
 package cn.edu.nju.server;
 
+import cn.edu.nju.bfunc.BFuncCache;
 import cn.edu.nju.builder.AbstractCheckerBuilder;
 import cn.edu.nju.checker.Checker;
 import cn.edu.nju.context.ContextParser;
@@ -104,7 +105,11 @@ public class Server extends AbstractCheckerBuilder implements Runnable{
             time = time + checker.getTimeCount();
         }
         LogFileHelper.getLogger().info("Total Inc: " + inc, true);
+        LogFileHelper.getLogger().info("Total violated links: " + violatedCount(), true);
         LogFileHelper.getLogger().info("Total checking time: " +  timeSum / 1000000 + " ms", true);
+        if (BFuncCache.isEnabled()) {
+            LogFileHelper.getLogger().info("BFunc cache hits: " + BFuncCache.getHits() + ", misses: " + BFuncCache.getMisses(), true);
+        }
         accuracy(LogFileHelper.logFilePath);
         shutdown();
     }
@@ -1,7 +1,15 @@
 package cn.edu.nju.util;
 
+import cn.edu.nju.bfunc.BFuncCache;
+import cn.edu.nju.bfunc.BFuncRegistry;
 import cn.edu.nju.context.Context;
 import cn.edu.nju.context.ContextParser;
+import cn.edu.nju.context.ContextStore;
+import cn.edu.nju.node.NodeType;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Created by njucjc on 2017/10/7.
@@ -13,9 +21,10 @@ public class BFuncHelper {
      * @return
      */
     public static boolean szLocRange(Context context) {
-        double longitude = context.getLongitude();
-        double latitude = context.getLatitude();
+        return szLocRange(context.getLongitude(), context.getLatitude());
+    }
 
+    private static boolean szLocRange(double longitude, double latitude) {
         return  Double.compare(longitude, 112.0) >= 0 &&
                 Double.compare(longitude, 116.0) <= 0 &&
                 Double.compare(latitude, 20.0) >= 0   &&
@@ -28,8 +37,8 @@ public class BFuncHelper {
      * @param context2
      * @return
      */
-    private static boolean same(Context context1, Context context2) {
-        return context1.equals(context2);
+    public static boolean same(Context context1, Context context2) {
+        return context1.getPlateId() == context2.getPlateId();
     }
 
 
@@ -39,9 +48,11 @@ public class BFuncHelper {
      * @param context2
      * @return
      */
-    private static boolean szSpdClose(Context context1, Context context2) {
-        double speed1 = context1.getSpeed();
-        double speed2 = context2.getSpeed();
+    public static boolean szSpdClose(Context context1, Context context2) {
+        return szSpdClose(context1.getSpeed(), context2.getSpeed());
+    }
+
+    private static boolean szSpdClose(double speed1, double speed2) {
         return  Double.compare(speed1 - speed2, -50.0) >= 0 &&
                 Double.compare(speed1 - speed2, 50.0) <= 0;
     }
@@ -52,10 +63,12 @@ public class BFuncHelper {
      * @param context2
      * @return
      */
-    private static boolean szLocDist(Context context1, Context context2) {
-        double d = getDistance(context1, context2);
-        return Double.compare(d, 0.025) <= 0;
+    public static boolean szLocDist(Context context1, Context context2) {
+        return szLocDist(getDistance(context1, context2));
+    }
 
+    private static boolean szLocDist(double d) {
+        return Double.compare(d, 0.025) <= 0;
     }
 
     /**
@@ -64,8 +77,11 @@ public class BFuncHelper {
      * @param context2
      * @return
      */
-    private static boolean szLocDistNeq(Context context1, Context context2) {
-        double d = getDistance(context1, context2);
+    public static boolean szLocDistNeq(Context context1, Context context2) {
+        return szLocDistNeq(getDistance(context1, context2));
+    }
+
+    private static boolean szLocDistNeq(double d) {
         return  Double.compare(d, 0.025) <= 0 &&
                 Double.compare(d, 0.0) != 0;
     }
@@ -76,8 +92,11 @@ public class BFuncHelper {
      * @param context2
      * @return
      */
-    private static boolean szLocClose(Context context1, Context context2) {
-        double d = getDistance(context1, context2);
+    public static boolean szLocClose(Context context1, Context context2) {
+        return szLocClose(getDistance(context1, context2));
+    }
+
+    private static boolean szLocClose(double d) {
         return Double.compare(d, 0.001) <= 0;
     }
 
@@ -96,33 +115,162 @@ public class BFuncHelper {
         return LocationHelper.getDistance(longitude1, latitude1, longitude2, latitude2);
     }
 
-    public static boolean bfun(String name, Context context1, Context context2) {
-        boolean value = false;
-        switch (name) {
-            case "sz_loc_range":
-                value = BFuncHelper.szLocRange(context1);
-                break;
-            case "same":
-                value = BFuncHelper.same(context1, context2);
-                break;
-            case "sz_loc_close":
-                value = BFuncHelper.szLocClose(context1, context2);
-                break;
-            case "sz_spd_close":
-                value = BFuncHelper.szSpdClose(context1, context2);
-                break;
-            case "sz_loc_dist":
-                value = BFuncHelper.szLocDist(context1, context2);
-                break;
-            case "sz_loc_dist_neq":
-                value = BFuncHelper.szLocDistNeq(context1, context2);
-                break;
-            default:
-                System.out.println("[INFO] Illegal bfunc: " + name);
-                System.exit(1);
-                break;
+    /**
+     * 按行号计算两车距离，直接读取ContextStore的列
+     * @param row1
+     * @param row2
+     * @return
+     */
+    private static double getDistance(int row1, int row2) {
+        return LocationHelper.getDistance(ContextStore.getLongitude(row1), ContextStore.getLatitude(row1),
+                ContextStore.getLongitude(row2), ContextStore.getLatitude(row2));
+    }
+
+    /**
+     * 将bfunction名解析为操作码，在解析rule时调用一次
+     * @param name
+     * @return 操作码，未定义的bfunction返回-1
+     */
+    public static int resolve(String name) {
+        return BFuncRegistry.resolve(name);
+    }
+
+    public static boolean bfun(int func, Context context1, Context context2) {
+        if (BFuncCache.isEnabled()) {
+            return BFuncCache.bfun(func, context1, context2);
+        }
+        return compute(func, context1, context2);
+    }
+
+    /**
+     * 按ContextStore中的行号计算bfunction，不创建Context
+     * @param func
+     * @param row1
+     * @param row2
+     * @return
+     */
+    public static boolean bfun(int func, int row1, int row2) {
+        if (BFuncCache.isEnabled()) {
+            return BFuncCache.bfun(func, row1, row2);
+        }
+        return compute(func, row1, row2);
+    }
+
+    /**
+     * 不经过缓存按行号计算bfunction，内置bfunction直接读取ContextStore的列
+     * @param func
+     * @param row1
+     * @param row2
+     * @return
+     */
+    public static boolean compute(int func, int row1, int row2) {
+        switch (func) {
+            case NodeType.SZ_LOC_RANGE:
+                return szLocRange(ContextStore.getLongitude(row1), ContextStore.getLatitude(row1));
+            case NodeType.SAME:
+                return ContextStore.getPlateId(row1) == ContextStore.getPlateId(row2);
+            case NodeType.SZ_LOC_CLOSE:
+                return szLocClose(getDistance(row1, row2));
+            case NodeType.SZ_SPD_CLOSE:
+                return szSpdClose(ContextStore.getSpeed(row1), ContextStore.getSpeed(row2));
+            case NodeType.SZ_LOC_DIST:
+                return szLocDist(getDistance(row1, row2));
+            case NodeType.SZ_LOC_DIST_NEQ:
+                return szLocDistNeq(getDistance(row1, row2));
+            default: //BFuncProvider提供的bfunction
+                return BFuncRegistry.get(func).evaluate(ContextStore.get(row1), ContextStore.get(row2));
         }
-        return value;
+    }
+
+    /**
+     * 不经过缓存直接计算bfunction
+     * @param func
+     * @param context1
+     * @param context2
+     * @return
+     */
+    public static boolean compute(int func, Context context1, Context context2) {
+        switch (func) {
+            case NodeType.SZ_LOC_RANGE:
+                return BFuncHelper.szLocRange(context1);
+            case NodeType.SAME:
+                return BFuncHelper.same(context1, context2);
+            case NodeType.SZ_LOC_CLOSE:
+                return BFuncHelper.szLocClose(context1, context2);
+            case NodeType.SZ_SPD_CLOSE:
+                return BFuncHelper.szSpdClose(context1, context2);
+            case NodeType.SZ_LOC_DIST:
+                return BFuncHelper.szLocDist(context1, context2);
+            case NodeType.SZ_LOC_DIST_NEQ:
+                return BFuncHelper.szLocDistNeq(context1, context2);
+            default: //BFuncProvider提供的bfunction
+                return BFuncRegistry.get(func).evaluate(context1, context2);
+        }
+    }
+
+    /**
+     * 批量计算：result[i] = bfun(func, contexts.get(i), context)，context为null时第二个参数也取contexts.get(i)
+     * @param func
+     * @param contexts
+     * @param context
+     * @param result
+     */
+    public static void bfun(int func, List<Context> contexts, Context context, boolean [] result) {
+        if (BFuncCache.isEnabled()) { //逐个经过缓存
+            for (int i = 0; i < contexts.size(); i++) {
+                Context c = contexts.get(i);
+                result[i] = BFuncCache.bfun(func, c, context == null ? c : context);
+            }
+            return;
+        }
+        BFuncRegistry.get(func).evaluate(contexts, context, result);
+    }
+
+    /**
+     * 按行号批量计算：result[i] = bfun(func, rows[i], row)，row为-1时第二个参数也取rows[i]。
+     * 内置bfunction直接读取列，自定义bfunction交给其批量接口
+     * @param func
+     * @param rows
+     * @param num
+     * @param row
+     * @param result
+     */
+    public static void bfun(int func, int [] rows, int num, int row, boolean [] result) {
+        if (BFuncCache.isEnabled() || func < BFuncRegistry.CUSTOM_OPCODE) {
+            for (int i = 0; i < num; i++) {
+                result[i] = bfun(func, rows[i], row == -1 ? rows[i] : row);
+            }
+            return;
+        }
+        BFuncRegistry.get(func).evaluate(new RowList(rows, num), row == -1 ? null : ContextStore.get(row), result);
+    }
+
+    /**
+     * 行号数组的只读Context视图，只供自定义bfunction的批量接口使用
+     */
+    private static class RowList extends AbstractList<Context> implements RandomAccess {
+        private final int [] rows;
+
+        private final int size;
+
+        RowList(int [] rows, int size) {
+            this.rows = rows;
+            this.size = size;
+        }
+
+        @Override
+        public Context get(int i) {
+            return ContextStore.get(rows[i]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    public static boolean bfun(String name, Context context1, Context context2) {
+        return bfun(resolve(name), context1, context2);
     }
 
     public static void main(String[] args) {
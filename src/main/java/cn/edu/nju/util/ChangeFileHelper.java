@@ -52,7 +52,7 @@ public class ChangeFileHelper {
     }
 
     public void parseChangeFile(String changeFilePath) {
-        Map<String, List<String>> contextChangeMap = new TreeMap<>();
+        Map<Long, List<String>> contextChangeMap = new TreeMap<>();
         ContextStaticRepo contextStaticRepo = new ContextStaticRepo(changeFilePath);
         File file = new File(changeFilePath.split("\\.")[0] + "_change.txt");
 
@@ -60,14 +60,13 @@ public class ChangeFileHelper {
         List<String> res = new ArrayList<>();
         try {
             while ((context = contextStaticRepo.getContext()) != null) {
-                String currentTimestamp = context.getTimestamp();
+                long currentTime = context.getTime();
 
-                Iterator<Map.Entry<String, List<String>>> it = contextChangeMap.entrySet().iterator();
+                Iterator<Map.Entry<Long, List<String>>> it = contextChangeMap.entrySet().iterator();
                 while(it.hasNext()) {
-                    Map.Entry<String, List<String>> entry = it.next();
-                    String timestamp = entry.getKey();
-                    if(TimestampHelper.timestampCmp(timestamp, currentTimestamp) < 0) {
-                        res.addAll(contextChangeMap.get(timestamp));
+                    Map.Entry<Long, List<String>> entry = it.next();
+                    if(entry.getKey() < currentTime) {
+                        res.addAll(entry.getValue());
                         it.remove();
                     }
                 }
@@ -76,22 +75,19 @@ public class ChangeFileHelper {
                 for(Pattern pattern: patternList) {
                     if(pattern.isBelong(context)) {
                         res.add(("+," + pattern.getId() + "," + str));
-                        String key = TimestampHelper.plusMillis(currentTimestamp, pattern.getFreshness());
-                        context.setTimestamp(key);
+                        long key = currentTime + pattern.getFreshness();
+                        context.setTime(key);
                         if(!contextChangeMap.containsKey(key)) {
                             contextChangeMap.put(key, new ArrayList<>());
                         }
                         contextChangeMap.get(key).add("-," + pattern.getId() + "," + context.allForString());
                     }
-                    context.setTimestamp(currentTimestamp);
+                    context.setTime(currentTime);
                 }
             }
 
-            Iterator<Map.Entry<String, List<String>>> it = contextChangeMap.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<String, List<String>> entry = it.next();
-                String key = entry.getKey();
-                res.addAll(contextChangeMap.get(key));
+            for (List<String> changes : contextChangeMap.values()) {
+                res.addAll(changes);
             }
 
             if(file.exists()) {
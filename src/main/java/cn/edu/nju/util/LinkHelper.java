@@ -1,66 +1,151 @@
 package cn.edu.nju.util;
 
+import cn.edu.nju.context.Context;
+import cn.edu.nju.context.ContextStore;
+import cn.edu.nju.memory.Config;
+
+
 /**
  * Created by njucjc on 2017/10/8.
  */
 public class LinkHelper {
+    /* 空link（没有任何参数） */
+    public static final long EMPTY_LINK = pack(-1, -1);
+
+    /**
+     * 将至多Config.MAX_PARAN_NUM个context id打包为一条link，-1表示该位置为空
+     * @param id1
+     * @param id2
+     * @return
+     */
+    public static long pack(int id1, int id2) {
+        return ((long) id1 << 32) | (id2 & 0xFFFFFFFFL);
+    }
+
+    public static long pack(ParamStack param) {
+        int size = param.size();
+        assert size <= Config.MAX_PARAN_NUM:"[DEBUG] Too many params: " + size;
+        return pack(size >= 1 ? param.getId(0) : -1, size >= 2 ? param.getId(1) : -1);
+    }
+
     /**
-     *
+     * 在param之后追加context后打包
+     */
+    public static long pack(ParamStack param, Context context) {
+        int size = param.size();
+        assert size < Config.MAX_PARAN_NUM:"[DEBUG] Too many params: " + size;
+        return size == 0 ? pack(context.getId(), -1) : pack(param.getId(0), context.getId());
+    }
+
+    /**
+     * 在param之后追加ContextStore中第row行的context后打包，不创建Context
+     */
+    public static long packRow(ParamStack param, int row) {
+        int size = param.size();
+        assert size < Config.MAX_PARAN_NUM:"[DEBUG] Too many params: " + size;
+        return size == 0 ? pack(ContextStore.getId(row), -1) : pack(param.getId(0), ContextStore.getId(row));
+    }
+
+    /**
+     * 取出link中第index个context id
+     * @param link
+     * @param index
+     * @return
+     */
+    public static int getId(long link, int index) {
+        return index == 0 ? (int) (link >> 32) : (int) link;
+    }
+
+    public static int length(long link) {
+        if (getId(link, 0) == -1) {
+            return 0;
+        }
+        return getId(link, 1) == -1 ? 1 : 2;
+    }
+
+    /**
+     * 在link1之后追加link2中从start开始的context
+     */
+    static long concat(long link1, long link2, int start) {
+        int id1 = -1;
+        int id2 = -1;
+        int len = 0;
+        for (int i = 0; i < length(link1); i++, len++) {
+            if (len == 0) {
+                id1 = getId(link1, i);
+            }
+            else {
+                id2 = getId(link1, i);
+            }
+        }
+        for (int i = start; i < length(link2); i++, len++) {
+            assert len < Config.MAX_PARAN_NUM:"[DEBUG] Too many params.";
+            if (len == 0) {
+                id1 = getId(link2, i);
+            }
+            else {
+                id2 = getId(link2, i);
+            }
+        }
+        return pack(id1, id2);
+    }
+
+    /**
+     * 以首条link的公共前缀为准求两个link集合的笛卡尔积，结果为LinkProduct，不立即展开
      * @param links1
      * @param links2
      * @return
      */
-    public static String linkCartesian(String links1, String links2) {
-        if(links1.equals(links2)) {
+    public static Links linkCartesian(Links links1, Links links2) {
+        if(links1 == links2 || links2.isEmpty()) {
             return links1;
         }
-        String [] strs1 = links1.split("#");
-        String [] strs2 = links2.split("#");
-
-        String [] cxts1 = strs1[0].split(" ");
-        String [] cxts2 = strs2[0].split(" ");
+        else if (links1.isEmpty()) {
+            return links2;
+        }
+        long first1 = links1.first();
+        long first2 = links2.first();
 
-        int length = cxts1.length > cxts2.length ? cxts2.length : cxts1.length;
+        int length1 = length(first1);
+        int length2 = length(first2);
+        int length = length1 > length2 ? length2 : length1;
         int index;
-        int start = 0;
         for(index = 0; index < length; index++) {
-            if(!cxts1[index].equals(cxts2[index])) {
+            if(getId(first1, index) != getId(first2, index)) {
                 break;
             }
-            start += cxts1[index].length();
         }
 
         if (index == length) {
-            return cxts1.length > cxts2.length ? links1 : links2;
+            return length1 > length2 ? links1 : links2;
         }
 
-        StringBuilder res = new StringBuilder();
-        for(String s1 : strs1) {
-            for(String s2 : strs2) {
-                res.append(s1);
-                if(start == 0) {
-                    res.append(" ");
-                    res.append(s2);
-                }
-                else {
-                    res.append(s2.substring(start + 1, s2.length()));
-                }
-                res.append("#");
-            }
-        }
-        res.deleteCharAt(res.length() - 1);
-        return res.toString();
+        return new LinkProduct(links1, links2, index);
     }
 
-    public static  String [] splitLinks(String links) {
-        return links.split("#");
+    /**
+     * 输出到日志时的link格式
+     * @param link
+     * @return
+     */
+    public static String toString(long link) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length(link); i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append("ctx_");
+            sb.append(getId(link, i));
+        }
+        return sb.toString();
     }
 
     public static void main(String[] args) {
-        System.out.println(linkCartesian("abc b c#abc b d","e f"));
-        System.out.println(linkCartesian("abc b c#abc b d","e f#e g"));
-        System.out.println(linkCartesian("abc b c#abc b d","abc b e#abc b f"));
-        System.out.println(linkCartesian("abc b c#abc b d","abc;b"));
-        System.out.println(linkCartesian("abc b","abc b c#abc b d"));
+        LinkSet links1 = new LinkSet();
+        links1.add(pack(1, 2));
+        links1.add(pack(1, 3));
+        System.out.println(linkCartesian(links1, LinkSet.of(pack(4, -1))));
+        System.out.println(linkCartesian(links1, LinkSet.of(pack(1, -1))));
+        System.out.println(linkCartesian(LinkSet.of(pack(1, -1)), LinkSet.of(pack(4, -1))));
     }
 }
@@ -0,0 +1,77 @@
+package cn.edu.nju.util;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * 两个link集合的笛卡尔积，不展开存储：每条link由左侧link追加右侧link中从index开始的context组成
+ */
+public class LinkProduct implements Links {
+    private Links left;
+
+    private Links right;
+
+    private int index;
+
+    public LinkProduct(Links left, Links right, int index) {
+        this.left = left;
+        this.right = right;
+        this.index = index;
+    }
+
+    @Override
+    public long first() {
+        return LinkHelper.concat(left.first(), right.first(), index);
+    }
+
+    @Override
+    public long size() {
+        long leftSize = left.size();
+        long rightSize = right.size();
+        if (leftSize != 0 && rightSize > Long.MAX_VALUE / leftSize) {
+            return Long.MAX_VALUE;
+        }
+        return leftSize * rightSize;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return left.isEmpty() || right.isEmpty();
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private PrimitiveIterator.OfLong leftIterator = left.iterator();
+
+            private PrimitiveIterator.OfLong rightIterator = null;
+
+            private long leftLink;
+
+            @Override
+            public boolean hasNext() {
+                while (rightIterator == null || !rightIterator.hasNext()) {
+                    if (!leftIterator.hasNext()) {
+                        return false;
+                    }
+                    leftLink = leftIterator.nextLong();
+                    rightIterator = right.iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return LinkHelper.concat(leftLink, rightIterator.nextLong(), index);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return LinkSet.format(this);
+    }
+}
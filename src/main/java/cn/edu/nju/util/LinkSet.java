@@ -0,0 +1,160 @@
+package cn.edu.nju.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * link集合，每条link为按LinkHelper.pack打包的context id元组。
+ * 集合由自身存储的link与若干子集合（并）组成，子集合只保存引用，
+ * 笛卡尔积见LinkProduct，只有在遍历时才展开。
+ */
+public class LinkSet implements Links {
+    private long [] links;
+
+    private int size;
+
+    private List<Links> parts;
+
+    public LinkSet() {
+        this(4);
+    }
+
+    public LinkSet(int capacity) {
+        this.links = new long[capacity > 0 ? capacity : 1];
+        this.size = 0;
+    }
+
+    public static LinkSet of(long link) {
+        LinkSet linkSet = new LinkSet(1);
+        linkSet.add(link);
+        return linkSet;
+    }
+
+    public void add(long link) {
+        if (size == links.length) {
+            links = Arrays.copyOf(links, size * 2);
+        }
+        links[size++] = link;
+    }
+
+    /**
+     * 并入另一个集合，不复制其中的link
+     * @param linkSet
+     */
+    public void addAll(Links linkSet) {
+        if (linkSet.isEmpty()) {
+            return;
+        }
+        if (parts == null) {
+            parts = new ArrayList<>();
+        }
+        parts.add(linkSet);
+    }
+
+    /**
+     * 集合中的第一条link，集合为空时返回LinkHelper.EMPTY_LINK
+     * @return
+     */
+    @Override
+    public long first() {
+        if (size > 0) {
+            return links[0];
+        }
+        if (parts != null) {
+            for (Links part : parts) {
+                if (!part.isEmpty()) {
+                    return part.first();
+                }
+            }
+        }
+        return LinkHelper.EMPTY_LINK;
+    }
+
+    /**
+     * 展开后的link数
+     * @return
+     */
+    @Override
+    public long size() {
+        long num = size;
+        if (parts != null) {
+            for (Links part : parts) {
+                num += part.size();
+            }
+        }
+        return num;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (size > 0) {
+            return false;
+        }
+        if (parts != null) {
+            for (Links part : parts) {
+                if (!part.isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int index = 0;
+
+            private int partIndex = 0;
+
+            private PrimitiveIterator.OfLong partIterator = null;
+
+            @Override
+            public boolean hasNext() {
+                if (index < size) {
+                    return true;
+                }
+                while (partIterator == null || !partIterator.hasNext()) {
+                    if (parts == null || partIndex >= parts.size()) {
+                        return false;
+                    }
+                    partIterator = parts.get(partIndex++).iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return index < size ? links[index++] : partIterator.nextLong();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return format(this);
+    }
+
+    /**
+     * 以#分隔的link列表
+     * @param links
+     * @return
+     */
+    static String format(Links links) {
+        StringBuilder sb = new StringBuilder();
+        PrimitiveIterator.OfLong it = links.iterator();
+        while (it.hasNext()) {
+            if (sb.length() > 0) {
+                sb.append('#');
+            }
+            sb.append(LinkHelper.toString(it.nextLong()));
+        }
+        return sb.toString();
+    }
+}
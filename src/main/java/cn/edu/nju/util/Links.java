@@ -0,0 +1,25 @@
+package cn.edu.nju.util;
+
+import java.util.PrimitiveIterator;
+
+/**
+ * 只读的link集合：LinkSet（可追加）与LinkProduct（笛卡尔积，遍历时展开）的公共接口，
+ * 结点的link、求值结果以及输出violated link时都只通过该接口读取
+ */
+public interface Links {
+    /**
+     * 集合中的第一条link，集合为空时返回LinkHelper.EMPTY_LINK
+     * @return
+     */
+    long first();
+
+    /**
+     * 展开后的link数
+     * @return
+     */
+    long size();
+
+    boolean isEmpty();
+
+    PrimitiveIterator.OfLong iterator();
+}
@@ -17,7 +17,7 @@ public class Logger {
         }
     }
 
-    public void info(String msg, boolean terminal) {
+    public synchronized void info(String msg, boolean terminal) {
         if (terminal) {
             System.out.println(msg);
         }
@@ -35,4 +35,22 @@ public class Logger {
 
         }
     }
+
+    /**
+     * 一次写入多行日志（每行以换行符结尾）
+     * @param lines
+     */
+    public synchronized void write(CharSequence lines) {
+        try {
+            out.append(lines);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 }
@@ -0,0 +1,121 @@
+package cn.edu.nju.util;
+
+import cn.edu.nju.context.Context;
+import cn.edu.nju.context.ContextStore;
+import cn.edu.nju.memory.Config;
+
+import java.util.Arrays;
+
+/**
+ * 求值时由外到内绑定的context，以ContextStore中的行号存放在每个线程复用的定长数组中，求值过程中不分配对象。
+ * 深度不超过rule的量词个数（Config.MAX_PARAN_NUM）。
+ * ForkJoinPool的线程在join时可能执行其它任务，因此任务开始时通过enter在栈顶压入自己的外层context作为新的一帧，
+ * 结束时exit恢复，下标均相对于当前帧
+ */
+public final class ParamStack {
+    private static final ThreadLocal<ParamStack> stacks = ThreadLocal.withInitial(() -> new ParamStack(Config.MAX_PARAN_NUM));
+
+    private int [] rows;
+
+    private int base = 0; //当前帧的起点
+
+    private int top = 0;
+
+    private ParamStack(int capacity) {
+        this.rows = new int[capacity];
+    }
+
+    /**
+     * 当前线程的栈
+     * @return
+     */
+    public static ParamStack current() {
+        return stacks.get();
+    }
+
+    public int size() {
+        return top - base;
+    }
+
+    public boolean isEmpty() {
+        return top == base;
+    }
+
+    public void push(Context context) {
+        if (top == rows.length) { //只在任务嵌套执行时扩容
+            rows = Arrays.copyOf(rows, rows.length << 1);
+        }
+        rows[top++] = context.getRow();
+    }
+
+    /**
+     * 按ContextStore中的行号压入context，不创建Context
+     * @param row
+     */
+    public void pushRow(int row) {
+        if (top == rows.length) {
+            rows = Arrays.copyOf(rows, rows.length << 1);
+        }
+        rows[top++] = row;
+    }
+
+    public void pop() {
+        assert top > base:"[DEBUG] Param stack underflow.";
+        top--;
+    }
+
+    public Context get(int i) {
+        return ContextStore.get(rows[base + i]);
+    }
+
+    /**
+     * 第i个context在ContextStore中的行号
+     * @param i
+     * @return
+     */
+    public int getRow(int i) {
+        return rows[base + i];
+    }
+
+    /**
+     * 第i个context的id，不创建Context
+     * @param i
+     * @return
+     */
+    public int getId(int i) {
+        return ContextStore.getId(rows[base + i]);
+    }
+
+    /**
+     * 当前帧的副本，交给其它线程执行的任务使用
+     * @return
+     */
+    public int [] toRows() {
+        return Arrays.copyOfRange(rows, base, top);
+    }
+
+    /**
+     * 以prefix为内容开始新的一帧
+     * @param prefix
+     * @return 原来的帧起点，交给exit恢复
+     */
+    public int enter(int [] prefix) {
+        if (top + prefix.length > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(rows.length << 1, top + prefix.length));
+        }
+        System.arraycopy(prefix, 0, rows, top, prefix.length);
+        int savedBase = base;
+        base = top;
+        top += prefix.length;
+        return savedBase;
+    }
+
+    /**
+     * 结束当前帧
+     * @param savedBase enter的返回值
+     */
+    public void exit(int savedBase) {
+        top = base;
+        base = savedBase;
+    }
+}
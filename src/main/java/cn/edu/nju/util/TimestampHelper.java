@@ -1,13 +1,47 @@
 package cn.edu.nju.util;
 
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 
 /**
  * Created by njucjc on 2017/10/23.
+ * 时间戳在读入时解析一次为毫秒数（Context.getTime），之后的比较与计算均为整数运算，
+ * 字符串形式只在输出时格式化。DateTimeFormatter是线程安全的。
  */
 public class TimestampHelper {
-    private static SimpleDateFormat dfs = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS");
+    private static final ZoneId zone = ZoneId.systemDefault();
+
+    private static final DateTimeFormatter dfs = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss:SSS");
+
+    /**
+     * 将时间戳解析为毫秒数
+     * @param timestamp
+     * @return
+     */
+    public static long parseMillis(String timestamp) {
+        long millis = 0L;
+        try {
+            millis = LocalDateTime.parse(timestamp, dfs).atZone(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            System.out.println("[INFO] 时间戳格式错误");
+            System.exit(1);
+        }
+        return millis;
+    }
+
+    /**
+     * 将毫秒数格式化为时间戳
+     * @param millis
+     * @return
+     */
+    public static String format(long millis) {
+        return dfs.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone));
+    }
+
     /**
      *返回两个时间戳对应时间差的毫秒数
      * @param timestamp1
@@ -15,32 +49,11 @@ public class TimestampHelper {
      * @return 两个时间戳的时间差
      */
     public static long timestampDiff(String timestamp1, String timestamp2) {
-        long diff = getDiff(timestamp1, timestamp2);
-        return diff > 0 ? diff : -diff;
-    }
-
-    private static long getDiff(String timestamp1, String timestamp2) {
-        long diff = 0;
-        try {
-            java.util.Date begin = dfs.parse(timestamp1);
-            java.util.Date end = dfs.parse(timestamp2);
-            diff = end.getTime() - begin.getTime();
-        }catch (Exception e) {
-            System.out.println("[INFO] 时间戳格式错误");
-            System.exit(1);
-        }
-        return diff;
+        return Math.abs(parseMillis(timestamp2) - parseMillis(timestamp1));
     }
 
     public static int timestampCmp(String timestamp1, String timestamp2) {
-        long diff = getDiff(timestamp1, timestamp2);
-        if(diff < 0) {
-            return 1;
-        } else if(diff > 0) {
-            return -1;
-        } else {
-            return 0;
-        }
+        return Long.compare(parseMillis(timestamp1), parseMillis(timestamp2));
     }
 
     /**
@@ -50,30 +63,15 @@ public class TimestampHelper {
      * @return
      */
     public static String plusMillis(String timestamp, long millis) {
-        String timestamp2 = null;
-        try {
-            java.util.Date begin = dfs.parse(timestamp);
-            timestamp2 = dfs.format(new java.util.Date(begin.getTime() + millis));
-        }catch (Exception e) {
-            System.out.println("[INFO] 时间戳格式错误");
-            System.exit(1);
-        }
-        return timestamp2;
+        return format(parseMillis(timestamp) + millis);
     }
 
     public static String getCurrentTimestamp() {
-        return dfs.format(new java.util.Date());
+        return format(System.currentTimeMillis());
     }
 
     public static java.util.Date parserDate(String time) {
-        java.util.Date date = null;
-        try {
-            date = dfs.parse(time);
-        } catch (Exception e) {
-            System.out.println("[INFO] 时间戳格式错误");
-            System.exit(1);
-        }
-        return date;
+        return new java.util.Date(parseMillis(time));
     }
 
 